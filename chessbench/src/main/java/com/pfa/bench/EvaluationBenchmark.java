@@ -0,0 +1,47 @@
+package com.pfa.bench;
+
+import com.pfa.engine.Engine;
+import com.pfa.engine.Perft;
+import com.pfa.engine.VirtualBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Static evaluation cost, with and without the mobility term
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+    @Param({ "0", "1", "5" })
+    public int positionIndex;
+
+    @Param({ "false", "true" })
+    public boolean useMobility;
+
+    private VirtualBoard position;
+    private Engine engine;
+
+    @Setup
+    public void setUp() {
+        position = VirtualBoard.fromFen(Perft.REFERENCE_FENS[positionIndex]);
+        engine = new Engine(1, useMobility);
+    }
+
+    @Benchmark
+    public int evaluatePosition() {
+        return engine.evaluate(position);
+    }
+}
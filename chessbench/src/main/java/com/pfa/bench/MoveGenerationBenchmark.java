@@ -0,0 +1,65 @@
+package com.pfa.bench;
+
+import com.pfa.engine.Perft;
+import com.pfa.engine.VirtualBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Legal move generation, make/unmake and perft on the reference positions
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+    // Index into Perft.REFERENCE_FENS: opening, "kiwipete" and a quiet middlegame
+    @Param({ "0", "1", "5" })
+    public int positionIndex;
+
+    private VirtualBoard position;
+    private Perft perft;
+    private final int[] moves = new int[VirtualBoard.MAX_MOVES];
+    private int moveCount;
+
+    @Setup
+    public void setUp() {
+        position = VirtualBoard.fromFen(Perft.REFERENCE_FENS[positionIndex]);
+        perft = new Perft(position);
+        moveCount = position.generateLegalMoves(moves, 0);
+    }
+
+    @Benchmark
+    public int generateLegalMoves() {
+        return position.generateLegalMoves(moves, 0);
+    }
+
+    // Plays and takes back every legal move once
+    @Benchmark
+    public long makeUnmake() {
+        long keys = 0;
+        for (int i = 0; i < moveCount; i++) {
+            position.makeMove(moves[i]);
+            keys ^= position.getZobristKey();
+            position.undoMove();
+        }
+        return keys;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long perft3() {
+        return perft.count(3);
+    }
+}
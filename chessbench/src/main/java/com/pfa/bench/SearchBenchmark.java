@@ -0,0 +1,48 @@
+package com.pfa.bench;
+
+import com.pfa.engine.Engine;
+import com.pfa.engine.Perft;
+import com.pfa.engine.VirtualBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Fixed-depth findBestMove; a fresh engine per call so every search starts with an empty hash table
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({ "0", "1", "5" })
+    public int positionIndex;
+
+    @Param({ "3", "4" })
+    public int depth;
+
+    private VirtualBoard position;
+    private Engine engine;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        position = VirtualBoard.fromFen(Perft.REFERENCE_FENS[positionIndex]);
+        engine = new Engine(1, true);
+    }
+
+    @Benchmark
+    public int findBestMove() {
+        return engine.findBestMove(position, depth);
+    }
+}
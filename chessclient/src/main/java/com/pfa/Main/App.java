@@ -32,7 +32,6 @@ import javafx.scene.text.FontWeight;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.application.Platform;
-import javafx.animation.PauseTransition;
 import javafx.animation.FadeTransition;
 import javafx.animation.ScaleTransition;
 import javafx.animation.TranslateTransition;
@@ -86,6 +85,11 @@ public class App extends Application {
     }
 
     private void showMainMenu() {
+        // Leaving a game stops the AI thinking about it
+        if (board != null && board.getAIController() != null) {
+            board.getAIController().cancel();
+        }
+
         BorderPane root = new BorderPane();
         root.setStyle("-fx-background-color: #282828;");
 
@@ -474,12 +478,7 @@ public class App extends Application {
         updateTurnIndicator(null);
 
         if (!playAsWhite && board.isWhitetoMove) {
-            PauseTransition pause = new PauseTransition(Duration.millis(500));
-            pause.setOnFinished(event -> {
-                aiController.makeAIMove();
-                updateTurnIndicator(null); // Update after AI's move
-            });
-            pause.play();
+            board.requestAIMove(() -> updateTurnIndicator(null)); // Update after AI's move
         }
     }
 
@@ -496,6 +495,7 @@ public class App extends Application {
         if (board == null) {
             board = new Board();
         }
+        board.setPlayers(this.playerName, this.opponentName);
 
         StackPane boardWrapper = new StackPane();
         boardWrapper.setAlignment(Pos.CENTER);
@@ -567,12 +567,7 @@ public class App extends Application {
             if (board.getAIController() != null &&
                     !board.getAIController().aiPlaysWhite &&
                     board.isWhitetoMove) {
-                PauseTransition pause = new PauseTransition(Duration.millis(500));
-                pause.setOnFinished(event -> {
-                    board.getAIController().makeAIMove();
-                    updateTurnIndicator(null); // Update after AI's move
-                });
-                pause.play();
+                board.requestAIMove(() -> updateTurnIndicator(null)); // Update after AI's move
             }
         });
 
@@ -646,12 +641,7 @@ public class App extends Application {
                 if (board.getAIController() != null &&
                         !board.getAIController().aiPlaysWhite &&
                         board.isWhitetoMove) {
-                    PauseTransition pause = new PauseTransition(Duration.millis(500));
-                    pause.setOnFinished(event -> {
-                        board.getAIController().makeAIMove();
-                        updateTurnIndicator(null);
-                    });
-                    pause.play();
+                    board.requestAIMove(() -> updateTurnIndicator(null));
                 }
             });
 
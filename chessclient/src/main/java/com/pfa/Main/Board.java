@@ -2,25 +2,42 @@ package com.pfa.Main;
 
 import com.pfa.AI.AIController;
 import com.pfa.Pieces.*;
-import javafx.animation.PauseTransition;
+import com.pfa.engine.PgnGame;
+import com.pfa.engine.PgnWriter;
+import com.pfa.engine.VirtualBoard;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
-import javafx.util.Duration;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class Board extends StackPane {
+    // Every game played on the board is appended to this PGN file when it ends or is abandoned; the file named by
+    // the chess.pgn system property, games.pgn in the working directory by default
+    private static final Path GAMES_FILE = Paths.get(System.getProperty("chess.pgn", "games.pgn"));
+
     public int tileSize = 85;
     public int cols = 8;
     public int rows = 8;
     public ArrayList<Pieces> pieceList = new ArrayList<>();
 
     public Pieces SelectedPiece;
+    // Squares SelectedPiece can move to, bit getTilenumber(col, row) per square, worked out once for
+    // targetsPiece; drawing and dropping read it instead of checking every square again
+    private long selectedTargets = 0;
+    private Pieces targetsPiece = null;
 
     private Canvas boardCanvas;
     private GraphicsContext gc;
@@ -31,6 +48,17 @@ public class Board extends StackPane {
     public int enPassantTile = -1;
     public boolean isGameOver = false;
     public boolean isWhitetoMove = true;
+    // Plies since the last capture or pawn move, and the number of the current move; kept for FEN
+    public int halfmoveClock = 0;
+    public int fullmoveNumber = 1;
+
+    // Record of the current game for GAMES_FILE: where it started and the moves since, in PackedMove form
+    private String startFen = VirtualBoard.START_FEN;
+    private int[] playedMoves = new int[256];
+    private int playedCount = 0;
+    private boolean gameSaved = false;
+    private String whiteName = "?";
+    private String blackName = "?";
 
     public CheckScanner checkScanner = new CheckScanner(this);
 
@@ -76,6 +104,10 @@ public class Board extends StackPane {
     }
 
     public void setAIController(AIController aiController) {
+        if (this.aiController != null && this.aiController != aiController) {
+            this.aiController.cancel();
+        }
+        aiMoveInProgress = false;
         this.aiController = aiController;
     }
 
@@ -84,6 +116,8 @@ public class Board extends StackPane {
     }
 
     public void MakeMove(Move move) {
+        recordMove(move);
+        clearTargets();
         if (move.piece.name.equals("Pawn")) {
             movePawn(move);
         } else if (move.piece.name.equals("King")) {
@@ -96,6 +130,10 @@ public class Board extends StackPane {
         move.piece.yPos = move.newrow * tileSize;
         move.piece.isFirstMove = false;
         SoundPlayer.playSound("move.wav");
+        halfmoveClock = move.capture != null || move.piece.name.equals("Pawn") ? 0 : halfmoveClock + 1;
+        if (!move.piece.isWhite) {
+            fullmoveNumber++;
+        }
         capture(move.capture);
 
         isWhitetoMove = !isWhitetoMove;
@@ -111,29 +149,24 @@ public class Board extends StackPane {
             onMoveExecuted.accept(null);
         }
 
+        requestAIMove(null);
+    }
+
+    // Lets the AI think in the background if it is its turn; onMoveMade runs on the FX thread after its move
+    public void requestAIMove(Runnable onMoveMade) {
         // Only trigger AI if it's active and the game isn't over
-        if (aiController != null && aiController.isActive() && !isGameOver && !aiMoveInProgress) {
-            // Don't immediately make an AI move - use a timer to add a small delay
+        if (aiController != null && aiController.isActive() && !isGameOver && !aiMoveInProgress &&
+                ((aiController.aiPlaysWhite && isWhitetoMove) ||
+                        (!aiController.aiPlaysWhite && !isWhitetoMove))) {
             aiMoveInProgress = true;
-
-            PauseTransition pause = new PauseTransition(Duration.millis(500));
-            pause.setOnFinished(event -> {
-                // Inside timer callback - now check if it's AI's turn
-                if (!isGameOver &&
-                        ((aiController.aiPlaysWhite && isWhitetoMove) ||
-                                (!aiController.aiPlaysWhite && !isWhitetoMove))) {
-                    // It's definitely AI's turn
-                    aiController.makeAIMove();
-                    // Redraw after AI move
-                    draw();
-                    // Notify about move
-                    if (onMoveExecuted != null) {
-                        onMoveExecuted.accept(null);
-                    }
-                }
+            aiController.requestMove(() -> {
                 aiMoveInProgress = false;
+                if (onMoveMade != null) {
+                    onMoveMade.run();
+                }
             });
-            pause.play();
+        } else if (aiController != null && isGameOver) {
+            aiController.stopPondering();
         }
     }
 
@@ -200,6 +233,41 @@ public class Board extends StackPane {
         return true;
     }
 
+    // Selects piece for moving, or clears the selection when it is null
+    public void selectPiece(Pieces piece) {
+        SelectedPiece = piece;
+        legalTargets();
+    }
+
+    // Whether the selected piece can legally move to col, row
+    public boolean isLegalTarget(int col, int row) {
+        return (legalTargets() & (1L << getTilenumber(col, row))) != 0;
+    }
+
+    // Runs the full legality check for every square once per selection, as each check scans the whole board
+    private long legalTargets() {
+        if (targetsPiece != SelectedPiece) {
+            targetsPiece = SelectedPiece;
+            selectedTargets = 0;
+            if (SelectedPiece != null) {
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < cols; c++) {
+                        if (isValidMove(new Move(this, SelectedPiece, c, r))) {
+                            selectedTargets |= 1L << getTilenumber(c, r);
+                        }
+                    }
+                }
+            }
+        }
+        return selectedTargets;
+    }
+
+    // Forgets the targets when the position changes
+    private void clearTargets() {
+        targetsPiece = null;
+        selectedTargets = 0;
+    }
+
     public Pieces findKing(boolean isWhite) {
         for (Pieces piece : pieceList) {
             if (isWhite == piece.isWhite && piece.name.equals("King")) {
@@ -268,6 +336,7 @@ public class Board extends StackPane {
             gameResult = isWhitetoMove ? "Black wins" : "White wins";
             System.out.println(gameResult);
             SoundPlayer.playSound("tab-tabi-tab.wav");
+            saveGame(isWhitetoMove ? PgnGame.BLACK_WINS : PgnGame.WHITE_WINS);
 
             // Notify that a game result is available if callback is set
             if (onMoveExecuted != null) {
@@ -282,9 +351,11 @@ public class Board extends StackPane {
                 gameResult = isWhitetoMove ? "Black wins" : "White wins";
                 System.out.println(gameResult);
                 SoundPlayer.playSound("tab-tabi-tab.wav");
+                saveGame(isWhitetoMove ? PgnGame.BLACK_WINS : PgnGame.WHITE_WINS);
             } else {
                 gameResult = "Stalemate";
                 System.out.println(gameResult);
+                saveGame(PgnGame.DRAW);
             }
 
             // Notify that a game result is available if callback is set
@@ -295,6 +366,7 @@ public class Board extends StackPane {
             isGameOver = true;
             gameResult = "Insufficient Material!";
             System.out.println(gameResult);
+            saveGame(PgnGame.DRAW);
 
             // Notify that a game result is available if callback is set
             if (onMoveExecuted != null) {
@@ -327,15 +399,12 @@ public class Board extends StackPane {
         }
 
         // Highlight valid moves for selected piece
-        if (SelectedPiece != null) {
-            for (int r = 0; r < rows; r++) {
-                for (int c = 0; c < cols; c++) {
-                    if (isValidMove(new Move(this, SelectedPiece, c, r))) {
-                        gc.setFill(Color.rgb(255, 0, 0, 0.5));
-                        gc.fillRect(c * tileSize, r * tileSize, tileSize, tileSize);
-                    }
-                }
-            }
+        long targets = legalTargets();
+        gc.setFill(Color.rgb(255, 0, 0, 0.5));
+        while (targets != 0) {
+            int tile = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            gc.fillRect((tile % cols) * tileSize, (tile / cols) * tileSize, tileSize, tileSize);
         }
 
         // Draw all pieces
@@ -352,14 +421,199 @@ public class Board extends StackPane {
     }
 
     public void reset() {
+        if (aiController != null) {
+            aiController.cancel();
+        }
+        saveGame(PgnGame.UNFINISHED);
+        startRecord(VirtualBoard.START_FEN);
         pieceList.clear();
         addPieces();
         SelectedPiece = null;
+        clearTargets();
         enPassantTile = -1;
         isGameOver = false;
         isWhitetoMove = true;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
         aiMoveInProgress = false;
         // Don't reset aiController to null here as it breaks the reference
         draw();
     }
+
+    // Sets up the position of a FEN string in place of the current game, like reset() does for the starting
+    // position. Throws IllegalArgumentException for a malformed FEN and leaves the board as it was.
+    public void loadFen(String fen) {
+        VirtualBoard position = VirtualBoard.fromFen(fen);
+        if (aiController != null) {
+            aiController.cancel();
+        }
+        saveGame(PgnGame.UNFINISHED);
+
+        pieceList.clear();
+        int rights = position.getCastlingRights();
+        for (int sq = 0; sq < 64; sq++) {
+            int code = position.getPieceAt(sq);
+            if (code == VirtualBoard.EMPTY) {
+                continue;
+            }
+            int col = sq & 7;
+            int row = sq >> 3;
+            boolean isWhite = VirtualBoard.pieceColor(code) == VirtualBoard.WHITE;
+            Pieces piece = createPiece(VirtualBoard.pieceType(code), col, row, isWhite);
+            // Only pieces that can still castle or double-push count as unmoved
+            int homeRow = isWhite ? 7 : 0;
+            int kingside = isWhite ? VirtualBoard.WHITE_KINGSIDE : VirtualBoard.BLACK_KINGSIDE;
+            int queenside = isWhite ? VirtualBoard.WHITE_QUEENSIDE : VirtualBoard.BLACK_QUEENSIDE;
+            if (piece.name.equals("Pawn")) {
+                piece.isFirstMove = row == (isWhite ? 6 : 1);
+            } else if (piece.name.equals("King")) {
+                piece.isFirstMove = row == homeRow && col == 4 && (rights & (kingside | queenside)) != 0;
+            } else if (piece.name.equals("Rook")) {
+                piece.isFirstMove = row == homeRow && ((col == 7 && (rights & kingside) != 0)
+                        || (col == 0 && (rights & queenside) != 0));
+            }
+            pieceList.add(piece);
+        }
+
+        SelectedPiece = null;
+        clearTargets();
+        enPassantTile = position.getEnPassantSquare();
+        isWhitetoMove = position.isWhiteToMove();
+        halfmoveClock = position.getHalfmoveClock();
+        fullmoveNumber = position.getFullmoveNumber();
+        startRecord(position.toFen());
+        isGameOver = false;
+        aiMoveInProgress = false;
+        updateGameState();
+        draw();
+    }
+
+    private Pieces createPiece(int type, int col, int row, boolean isWhite) {
+        switch (type) {
+            case VirtualBoard.PAWN:
+                return new Pawn(this, col, row, isWhite);
+            case VirtualBoard.KNIGHT:
+                return new Knight(this, col, row, isWhite);
+            case VirtualBoard.BISHOP:
+                return new Bishop(this, col, row, isWhite);
+            case VirtualBoard.ROOK:
+                return new Rook(this, col, row, isWhite);
+            case VirtualBoard.QUEEN:
+                return new Queen(this, col, row, isWhite);
+            default:
+                return new King(this, col, row, isWhite);
+        }
+    }
+
+    // Names written to the White and Black tags of the saved games
+    public void setPlayers(String white, String black) {
+        if (!white.equals(whiteName) || !black.equals(blackName)) {
+            // A game in progress is saved under the names it was played with
+            saveGame(PgnGame.UNFINISHED);
+        }
+        whiteName = white;
+        blackName = black;
+    }
+
+    private void startRecord(String fen) {
+        startFen = fen;
+        playedCount = 0;
+        gameSaved = false;
+    }
+
+    // Called before the move changes the board, while it can still be read as the position it is played from
+    private void recordMove(Move move) {
+        int from = getTilenumber(move.piece.col, move.piece.row);
+        int to = getTilenumber(move.newcol, move.newrow);
+        if (playedCount == playedMoves.length) {
+            playedMoves = Arrays.copyOf(playedMoves, playedCount * 2);
+        }
+        playedMoves[playedCount++] = toVirtualBoard().encodeMove(from, to);
+    }
+
+    // Appends the game to GAMES_FILE once, unless no move was played
+    private void saveGame(String result) {
+        if (gameSaved || playedCount == 0) {
+            return;
+        }
+        gameSaved = true;
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "Casual game");
+        tags.put("Site", "webchess");
+        tags.put("Date", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+        tags.put("Round", "-");
+        tags.put("White", whiteName);
+        tags.put("Black", blackName);
+        if (!startFen.equals(VirtualBoard.START_FEN)) {
+            tags.put("FEN", startFen);
+        }
+        PgnGame game = new PgnGame(tags, Arrays.copyOf(playedMoves, playedCount), result);
+        try (PgnWriter writer = PgnWriter.append(GAMES_FILE)) {
+            writer.write(game);
+        } catch (IOException e) {
+            System.err.println("Failed to save game to " + GAMES_FILE + ": " + e.getMessage());
+        }
+    }
+
+    // FEN of the current position, e.g. to report a position where the AI was slow
+    public String toFen() {
+        return toVirtualBoard().toFen();
+    }
+
+    // The current position reached by replaying the game from its start, so that a search from it can see
+    // repetitions of earlier positions. Falls back to the board alone if the record does not lead to it.
+    public VirtualBoard toGamePosition() {
+        VirtualBoard current = toVirtualBoard();
+        VirtualBoard position = VirtualBoard.fromFen(startFen);
+        for (int i = 0; i < playedCount; i++) {
+            position.makeMove(playedMoves[i]);
+        }
+        return position.getZobristKey() == current.getZobristKey() ? position : current;
+    }
+
+    // Reads the board into a VirtualBoard. Castling rights come from kings and rooks that have not moved yet.
+    public VirtualBoard toVirtualBoard() {
+        int[] squares = new int[64];
+        Arrays.fill(squares, VirtualBoard.EMPTY);
+        for (Pieces piece : pieceList) {
+            int color = piece.isWhite ? VirtualBoard.WHITE : VirtualBoard.BLACK;
+            squares[piece.row * 8 + piece.col] = VirtualBoard.makePiece(color, VirtualBoard.typeOf(piece.name));
+        }
+
+        int castlingRights = 0;
+        if (isUnmoved(getPieces(4, 7), "King", true)) {
+            if (isUnmoved(getPieces(7, 7), "Rook", true))
+                castlingRights |= VirtualBoard.WHITE_KINGSIDE;
+            if (isUnmoved(getPieces(0, 7), "Rook", true))
+                castlingRights |= VirtualBoard.WHITE_QUEENSIDE;
+        }
+        if (isUnmoved(getPieces(4, 0), "King", false)) {
+            if (isUnmoved(getPieces(7, 0), "Rook", false))
+                castlingRights |= VirtualBoard.BLACK_KINGSIDE;
+            if (isUnmoved(getPieces(0, 0), "Rook", false))
+                castlingRights |= VirtualBoard.BLACK_QUEENSIDE;
+        }
+
+        // enPassantTile is kept until the next pawn move, so only trust it when it is usable now
+        int ep = enPassantTile;
+        int enPassantSquare = -1;
+        if (ep >= 0) {
+            int victimSquare = isWhitetoMove ? ep + 8 : ep - 8;
+            int expectedRow = isWhitetoMove ? 2 : 5;
+            int enemyPawn = VirtualBoard.makePiece(isWhitetoMove ? VirtualBoard.BLACK : VirtualBoard.WHITE,
+                    VirtualBoard.PAWN);
+            if ((ep >> 3) == expectedRow && squares[ep] == VirtualBoard.EMPTY && squares[victimSquare] == enemyPawn) {
+                enPassantSquare = ep;
+            }
+        }
+
+        VirtualBoard position = VirtualBoard.of(squares, isWhitetoMove, castlingRights, enPassantSquare);
+        position.setMoveCounters(halfmoveClock, fullmoveNumber);
+        return position;
+    }
+
+    private static boolean isUnmoved(Pieces piece, String name, boolean isWhite) {
+        return piece != null && piece.name.equals(name) && piece.isWhite == isWhite && piece.isFirstMove;
+    }
 }
@@ -31,7 +31,7 @@ public class input {
             Pieces pieceXY = board.getPieces(col, row);
 
             if (pieceXY != null && pieceXY.isWhite == board.isWhitetoMove) {
-                board.SelectedPiece = pieceXY;
+                board.selectPiece(pieceXY);
 
                 dragOffsetX = e.getX() - (pieceXY.col * board.tileSize);
                 dragOffsetY = e.getY() - (pieceXY.row * board.tileSize);
@@ -56,7 +56,7 @@ public class input {
             if (board.isGameOver) {
                 returnPieceToOriginalPosition();
                 board.draw();
-                board.SelectedPiece = null;
+                board.selectPiece(null);
                 return;
             }
 
@@ -64,10 +64,9 @@ public class input {
             int row = (int) (e.getY() / board.tileSize);
 
             if (isInsideBoard(col, row)) {
-                Move move = new Move(board, board.SelectedPiece, col, row);
-
-                if (board.isValidMove(move)) {
-                    board.MakeMove(move);
+                // Checked against the targets worked out when the piece was picked up
+                if (board.isLegalTarget(col, row)) {
+                    board.MakeMove(new Move(board, board.SelectedPiece, col, row));
                 } else {
                     returnPieceToOriginalPosition();
                     SoundPlayer.playSound("error.wav");
@@ -78,7 +77,7 @@ public class input {
                 board.draw();
             }
 
-            board.SelectedPiece = null;
+            board.selectPiece(null);
         }
     }
 
@@ -38,29 +38,8 @@ public abstract class Pieces {
         }
     }
 
+    // Shared, already scaled sprite; see SpriteCache
     protected static Image loadAndSizeImage(String filename, int size) {
-        try {
-            String imagePath = "/Res/" + filename;
-            System.out.println("Trying to load: " + imagePath);
-
-            java.net.URL url = Pieces.class.getResource(imagePath);
-
-            if (url == null) {
-                imagePath = "Res/" + filename;
-                url = Pieces.class.getResource(imagePath);
-            }
-
-            if (url == null) {
-                System.err.println("Could not find resource: " + filename);
-                return null;
-            }
-
-            Image img = new Image(url.toString());
-            return new Image(img.getUrl(), size, size, true, true);
-        } catch (Exception e) {
-            System.err.println("Failed to load image: " + filename);
-            e.printStackTrace();
-            return null;
-        }
+        return SpriteCache.get(filename, size);
     }
 }
@@ -0,0 +1,40 @@
+package com.pfa.Pieces;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javafx.scene.image.Image;
+
+// Piece images, decoded and scaled once per file and tile size and then shared by every piece that uses them.
+// Creating a piece, for a new game or a promotion, is then a map lookup instead of reading a PNG.
+public final class SpriteCache {
+    private static final Map<String, Image> SPRITES = new ConcurrentHashMap<>();
+
+    private SpriteCache() {
+    }
+
+    // The image in /Res/filename scaled to fit size x size, or null when it cannot be loaded
+    public static Image get(String filename, int size) {
+        return SPRITES.computeIfAbsent(size + "/" + filename, key -> load(filename, size));
+    }
+
+    private static Image load(String filename, int size) {
+        try {
+            URL url = SpriteCache.class.getResource("/Res/" + filename);
+            if (url == null) {
+                url = SpriteCache.class.getResource("Res/" + filename);
+            }
+            if (url == null) {
+                System.err.println("Could not find resource: " + filename);
+                return null;
+            }
+            // Decode straight to the requested size, without first decoding the full image
+            return new Image(url.toString(), size, size, true, true);
+        } catch (Exception e) {
+            System.err.println("Failed to load image: " + filename);
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package com.pfa.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Builds the tables Bitbases reads by retrograde analysis, one material combination at a time, smallest first
+// so every capture or promotion leads into a finished table. A table starts with the positions decided by a
+// single move: mates, and captures or promotions into a finished table. From each newly decided position
+// the generator then steps back to the positions one move before it: they win if it loses, and lose once
+// all their moves lead to positions the opponent wins. What is undecided when nothing changes is a draw.
+// Every step runs in parallel over the positions it covers.
+// Usage: java com.pfa.engine.BitbaseGenerator [file] [max men]   writes bitbases.bin with up to 4 men by default
+public class BitbaseGenerator {
+    // Generation states of a position, for the side to move; WIN and LOSS match the Bitbases probe results
+    private static final byte UNDECIDED = 0;
+    private static final byte WIN = Bitbases.WIN;
+    private static final byte LOSS = Bitbases.LOSS;
+    private static final byte INVALID = 3;
+
+    private static final int CHUNK_SIZE = 1 << 14;
+    private static final VarHandle STATES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    // Finished tables in the packed format of Bitbases, by material code
+    private final byte[][] tables = new byte[Bitbases.MATERIAL_CODES][];
+
+    // Material codes of every table with at most maxMen pieces, in an order where each table comes after
+    // the tables its captures and promotions lead to: fewer men first, then fewer pawns
+    public static List<Integer> materials(int maxMen) {
+        List<Integer> codes = new ArrayList<>();
+        for (int code = 0; code < Bitbases.MATERIAL_CODES; code++) {
+            if (2 + menCount(code) <= maxMen && Bitbases.isCanonical(code)) {
+                codes.add(code);
+            }
+        }
+        codes.sort(Comparator.comparingInt((Integer code) -> menCount(code)).thenComparingInt(
+                code -> Bitbases.pieceCount(code, VirtualBoard.WHITE, VirtualBoard.PAWN)
+                        + Bitbases.pieceCount(code, VirtualBoard.BLACK, VirtualBoard.PAWN)));
+        return codes;
+    }
+
+    private static int menCount(int code) {
+        int count = 0;
+        for (int color = VirtualBoard.WHITE; color <= VirtualBoard.BLACK; color++) {
+            for (int type : Bitbases.TABLE_TYPES) {
+                count += Bitbases.pieceCount(code, color, type);
+            }
+        }
+        return count;
+    }
+
+    // Name of a material combination such as KRKP
+    public static String materialName(int code) {
+        StringBuilder name = new StringBuilder();
+        for (int color = VirtualBoard.WHITE; color <= VirtualBoard.BLACK; color++) {
+            name.append('K');
+            for (int type : Bitbases.TABLE_TYPES) {
+                for (int i = 0; i < Bitbases.pieceCount(code, color, type); i++) {
+                    name.append("PNBRQ".charAt(type));
+                }
+            }
+        }
+        return name.toString();
+    }
+
+    // Generates the table for code; every table it depends on must already be generated
+    public byte[] generate(int code) {
+        Table table = new Table(code);
+        table.solve();
+        tables[code] = table.pack();
+        return tables[code];
+    }
+
+    // Writes every table generated so far in the format Bitbases.open reads
+    public void write(Path path) throws IOException {
+        List<Integer> codes = new ArrayList<>();
+        for (int code = 0; code < tables.length; code++) {
+            if (tables[code] != null) {
+                codes.add(code);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(Bitbases.FILE_MAGIC);
+            out.writeInt(codes.size());
+            for (int code : codes) {
+                out.writeInt(code);
+                out.writeInt(tables[code].length);
+                out.write(tables[code]);
+            }
+        }
+    }
+
+    // Value of a position in a finished table for its side to move. Pieces whose square is -1 have been
+    // captured; the scratch arrays receive the remaining pieces.
+    private int lookup(int[] pieces, int[] squares, int count, int stm, int[] scratchPieces,
+            int[] scratchSquares) {
+        int remaining = 0;
+        for (int i = 0; i < count; i++) {
+            if (squares[i] >= 0) {
+                scratchPieces[remaining] = pieces[i];
+                scratchSquares[remaining++] = squares[i];
+            }
+        }
+        int code = Bitbases.materialCode(scratchPieces, remaining);
+        if (!Bitbases.isCanonical(code)) {
+            for (int i = 0; i < remaining; i++) {
+                scratchPieces[i] = VirtualBoard.makePiece(VirtualBoard.pieceColor(scratchPieces[i]) ^ 1,
+                        VirtualBoard.pieceType(scratchPieces[i]));
+                scratchSquares[i] ^= 56;
+            }
+            code = Bitbases.materialCode(scratchPieces, remaining);
+            stm ^= 1;
+        }
+        Bitbases.sortForTable(scratchPieces, scratchSquares, remaining);
+        return Bitbases.get(tables[code], Bitbases.index(stm, scratchSquares, remaining, Bitbases.hasPawns(code)));
+    }
+
+    // One table being generated. Its pieces keep their slots in table order, kings first, so a move only
+    // changes one square and positions with the same material share this table.
+    private class Table {
+        private final int[] pieces;
+        private final int count;
+        private final boolean pawns;
+        private final int size;
+        private final int kingSquareCount;
+        private final byte[] states;
+
+        Table(int code) {
+            List<Integer> list = new ArrayList<>();
+            list.add(VirtualBoard.makePiece(VirtualBoard.WHITE, VirtualBoard.KING));
+            list.add(VirtualBoard.makePiece(VirtualBoard.BLACK, VirtualBoard.KING));
+            for (int color = VirtualBoard.WHITE; color <= VirtualBoard.BLACK; color++) {
+                for (int type : Bitbases.TABLE_TYPES) {
+                    for (int i = 0; i < Bitbases.pieceCount(code, color, type); i++) {
+                        list.add(VirtualBoard.makePiece(color, type));
+                    }
+                }
+            }
+            pieces = list.stream().mapToInt(Integer::intValue).toArray();
+            count = pieces.length;
+            pawns = Bitbases.hasPawns(code);
+            size = Bitbases.tableSize(count, pawns);
+            kingSquareCount = Bitbases.KING_SQUARES[pawns ? 1 : 0].length;
+            states = new byte[size];
+        }
+
+        void solve() {
+            int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            int[] decided = concat(IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+                Worker worker = new Worker();
+                int end = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+                for (int index = chunk * CHUNK_SIZE; index < end; index++) {
+                    worker.initialize(index);
+                }
+                return worker.decided.toArray();
+            }));
+
+            while (decided.length > 0) {
+                int[] frontier = decided;
+                int frontierChunks = (frontier.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                decided = concat(IntStream.range(0, frontierChunks).parallel().mapToObj(chunk -> {
+                    Worker worker = new Worker();
+                    int end = Math.min(frontier.length, (chunk + 1) * CHUNK_SIZE);
+                    for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                        worker.retract(frontier[i]);
+                    }
+                    return worker.decided.toArray();
+                }));
+            }
+        }
+
+        // Two bits per position: WIN, LOSS, or 0 for draws and positions that cannot occur
+        byte[] pack() {
+            byte[] packed = new byte[(size + 3) / 4];
+            for (int index = 0; index < size; index++) {
+                int state = states[index];
+                if (state == WIN || state == LOSS) {
+                    packed[index >> 2] |= state << ((index & 3) << 1);
+                }
+            }
+            return packed;
+        }
+
+        // Per-thread move generation over this table's positions, with its own scratch arrays
+        private class Worker {
+            private final IntList decided = new IntList();
+            private final int[] squares = new int[count];
+            private final int[] previousSquares = new int[count];
+            private final int[] twinSquares = new int[count];
+            private final int[] childSquares = new int[count];
+            private final int[] childPieces = new int[count];
+            private final int[] epSquares = new int[count];
+            private final int[] scratchPieces = new int[count];
+            private final int[] scratchSquares = new int[count];
+
+            // Decodes index into squares and returns its side to move
+            private int decode(int index) {
+                int bits = 6 * (count - 1);
+                int high = index >>> bits;
+                squares[0] = Bitbases.KING_SQUARES[pawns ? 1 : 0][high % kingSquareCount];
+                for (int i = 1; i < count; i++) {
+                    squares[i] = index >>> (6 * (count - 1 - i)) & 63;
+                }
+                return high / kingSquareCount;
+            }
+
+            void initialize(int index) {
+                int stm = decode(index);
+                if (!isValid(stm)) {
+                    states[index] = INVALID;
+                    return;
+                }
+                int state = evaluate(squares, stm, false);
+                if (state != UNDECIDED) {
+                    decide(index, squares, stm, state);
+                }
+            }
+
+            // Records a decided position. Without pawns, a white king on the diagonal of its triangle leaves
+            // the position two entries, mirrored along that diagonal; both are decided together.
+            private void decide(int index, int[] position, int stm, int state) {
+                if (STATES.compareAndSet(states, index, UNDECIDED, (byte) state)) {
+                    decided.add(index);
+                }
+                if (pawns) {
+                    return;
+                }
+                int transform = Bitbases.KING_TRANSFORM[0][position[0]];
+                int king = Bitbases.transform(position[0], transform);
+                if ((king & 7) == 7 - (king >> 3)) {
+                    for (int i = 0; i < count; i++) {
+                        twinSquares[i] = Bitbases.transform(Bitbases.transform(position[i], transform), 7);
+                    }
+                    int twin = Bitbases.index(stm, twinSquares, count, false);
+                    if (STATES.compareAndSet(states, twin, UNDECIDED, (byte) state)) {
+                        decided.add(twin);
+                    }
+                }
+            }
+
+            private boolean isValid(int stm) {
+                long occupied = 0;
+                for (int i = 0; i < count; i++) {
+                    long bit = 1L << squares[i];
+                    if ((occupied & bit) != 0) {
+                        return false;
+                    }
+                    int row = squares[i] >> 3;
+                    if (VirtualBoard.pieceType(pieces[i]) == VirtualBoard.PAWN && (row == 0 || row == 7)) {
+                        return false;
+                    }
+                    occupied |= bit;
+                }
+                // The side that just moved cannot be in check
+                return !isAttacked(squares[stm ^ 1], stm, pieces, squares, occupied);
+            }
+
+            // Steps back from a newly decided position to the undecided positions one move before it and
+            // decides them where possible
+            void retract(int index) {
+                int stm = decode(index);
+                int mover = stm ^ 1;
+                boolean lost = states[index] == LOSS;
+                long occupied = occupied(pieces, squares);
+
+                for (int i = 0; i < count; i++) {
+                    if (VirtualBoard.pieceColor(pieces[i]) != mover) {
+                        continue;
+                    }
+                    int sq = squares[i];
+                    long origins;
+                    boolean doublePush = false;
+                    if (VirtualBoard.pieceType(pieces[i]) == VirtualBoard.PAWN) {
+                        int back = mover == VirtualBoard.WHITE ? 8 : -8;
+                        int row = sq >> 3;
+                        origins = 0;
+                        boolean single = mover == VirtualBoard.WHITE ? row <= 5 : row >= 2;
+                        if (single && (occupied & 1L << (sq + back)) == 0) {
+                            origins |= 1L << (sq + back);
+                            int pushedRow = mover == VirtualBoard.WHITE ? 4 : 3;
+                            if (row == pushedRow && (occupied & 1L << (sq + 2 * back)) == 0) {
+                                origins |= 1L << (sq + 2 * back);
+                                doublePush = true;
+                            }
+                        }
+                    } else {
+                        origins = attacks(pieces[i], sq, occupied) & ~occupied;
+                    }
+
+                    for (; origins != 0; origins &= origins - 1) {
+                        int from = Long.numberOfTrailingZeros(origins);
+                        System.arraycopy(squares, 0, previousSquares, 0, count);
+                        previousSquares[i] = from;
+                        long before = occupied ^ 1L << sq ^ 1L << from;
+                        // In the earlier position the side now to move cannot have been in check
+                        if (isAttacked(previousSquares[stm], mover, pieces, previousSquares, before)) {
+                            continue;
+                        }
+                        int previous = Bitbases.index(mover, previousSquares, count, pawns);
+                        if (states[previous] != UNDECIDED) {
+                            continue;
+                        }
+                        int state;
+                        if (lost && !(doublePush && Math.abs(from - sq) == 16)) {
+                            state = WIN;
+                        } else {
+                            // After a double push the reply may be an en passant capture the table does not
+                            // record, so that move is weighed in full
+                            state = evaluate(previousSquares, mover, !lost);
+                        }
+                        if (state != UNDECIDED) {
+                            decide(previous, previousSquares, mover, state);
+                        }
+                    }
+                }
+            }
+
+            // WIN if some move leads to a position the opponent loses, LOSS if every move leads to one the
+            // opponent wins (mate included), otherwise UNDECIDED. With onlyLoss set, returns as soon as the
+            // position cannot be lost.
+            private int evaluate(int[] position, int stm, boolean onlyLoss) {
+                long occupied = occupied(pieces, position);
+                long own = 0;
+                for (int i = 0; i < count; i++) {
+                    if (VirtualBoard.pieceColor(pieces[i]) == stm) {
+                        own |= 1L << position[i];
+                    }
+                }
+                boolean hasMove = false;
+                boolean allWin = true;
+
+                for (int i = 0; i < count; i++) {
+                    if (VirtualBoard.pieceColor(pieces[i]) != stm) {
+                        continue;
+                    }
+                    int from = position[i];
+                    boolean pawn = VirtualBoard.pieceType(pieces[i]) == VirtualBoard.PAWN;
+                    long targets;
+                    if (pawn) {
+                        int forward = stm == VirtualBoard.WHITE ? -8 : 8;
+                        targets = Bitboards.PAWN_ATTACKS[stm][from] & occupied & ~own;
+                        if ((occupied & 1L << (from + forward)) == 0) {
+                            targets |= 1L << (from + forward);
+                            int startRow = stm == VirtualBoard.WHITE ? 6 : 1;
+                            if ((from >> 3) == startRow && (occupied & 1L << (from + 2 * forward)) == 0) {
+                                targets |= 1L << (from + 2 * forward);
+                            }
+                        }
+                    } else {
+                        targets = attacks(pieces[i], from, occupied) & ~own;
+                    }
+
+                    for (; targets != 0; targets &= targets - 1) {
+                        int to = Long.numberOfTrailingZeros(targets);
+                        boolean promotion = pawn && ((to >> 3) == 0 || (to >> 3) == 7);
+                        for (int promoted = promotion ? VirtualBoard.QUEEN : VirtualBoard.PAWN;
+                                promoted >= (promotion ? VirtualBoard.KNIGHT : VirtualBoard.PAWN); promoted--) {
+                            int result = moveResult(position, stm, i, to, promoted, occupied);
+                            if (result == INVALID) {
+                                break; // Illegal for every promotion piece alike
+                            }
+                            hasMove = true;
+                            if (result == LOSS) {
+                                return WIN;
+                            }
+                            if (result != WIN) {
+                                allWin = false;
+                                if (onlyLoss) {
+                                    return UNDECIDED;
+                                }
+                            }
+                        }
+                    }
+                }
+
+                if (!hasMove) {
+                    return isAttacked(position[stm], stm ^ 1, pieces, position, occupied) ? LOSS : UNDECIDED;
+                }
+                return allWin ? LOSS : UNDECIDED;
+            }
+
+            // State for the opponent after piece i of the side to move goes to the square to, promoting to
+            // promoted if it is a pawn reaching the last row; INVALID if the move leaves its king in check
+            private int moveResult(int[] position, int stm, int i, int to, int promoted, long occupied) {
+                System.arraycopy(position, 0, childSquares, 0, count);
+                System.arraycopy(pieces, 0, childPieces, 0, count);
+                int from = position[i];
+                boolean exit = false;
+                for (int j = 0; j < count; j++) {
+                    if (position[j] == to) {
+                        childSquares[j] = -1;
+                        exit = true;
+                    }
+                }
+                childSquares[i] = to;
+                if (VirtualBoard.pieceType(pieces[i]) == VirtualBoard.PAWN && promoted != VirtualBoard.PAWN) {
+                    childPieces[i] = VirtualBoard.makePiece(stm, promoted);
+                    exit = true;
+                }
+                long after = occupied & ~(1L << from) | 1L << to;
+                if (isAttacked(childSquares[stm], stm ^ 1, childPieces, childSquares, after)) {
+                    return INVALID;
+                }
+                if (exit) {
+                    return lookup(childPieces, childSquares, count, stm ^ 1, scratchPieces, scratchSquares);
+                }
+
+                int result = states[Bitbases.index(stm ^ 1, childSquares, count, pawns)];
+                if (VirtualBoard.pieceType(pieces[i]) == VirtualBoard.PAWN && Math.abs(to - from) == 16) {
+                    result = withEnPassant(result, stm, i, (from + to) / 2, after);
+                }
+                return result == INVALID ? UNDECIDED : result;
+            }
+
+            // Result for the opponent after a double push of piece i past epSquare, when the opponent may
+            // either play on from the table position or capture en passant, whichever is better for it
+            private int withEnPassant(int result, int stm, int i, int epSquare, long occupied) {
+                int opponent = stm ^ 1;
+                for (int j = 0; j < count; j++) {
+                    if (VirtualBoard.pieceColor(pieces[j]) != opponent
+                            || VirtualBoard.pieceType(pieces[j]) != VirtualBoard.PAWN
+                            || (Bitboards.PAWN_ATTACKS[opponent][childSquares[j]] & 1L << epSquare) == 0) {
+                        continue;
+                    }
+                    System.arraycopy(childSquares, 0, epSquares, 0, count);
+                    long after = occupied & ~(1L << epSquares[j]) & ~(1L << epSquares[i]) | 1L << epSquare;
+                    epSquares[j] = epSquare;
+                    epSquares[i] = -1;
+                    if (isAttacked(epSquares[opponent], stm, pieces, epSquares, after)) {
+                        continue;
+                    }
+                    // The capture leaves the pusher to move: its loss is the opponent's win
+                    int capture = lookup(pieces, epSquares, count, stm, scratchPieces, scratchSquares);
+                    if (capture == LOSS) {
+                        return WIN;
+                    }
+                    if (capture != WIN && result == LOSS) {
+                        result = UNDECIDED;
+                    }
+                }
+                return result;
+            }
+        }
+    }
+
+    private static long occupied(int[] pieces, int[] squares) {
+        long occupied = 0;
+        for (int i = 0; i < pieces.length; i++) {
+            if (squares[i] >= 0) {
+                occupied |= 1L << squares[i];
+            }
+        }
+        return occupied;
+    }
+
+    // Squares a non-pawn piece on sq attacks
+    private static long attacks(int piece, int sq, long occupied) {
+        switch (VirtualBoard.pieceType(piece)) {
+            case VirtualBoard.KNIGHT:
+                return Bitboards.KNIGHT_ATTACKS[sq];
+            case VirtualBoard.BISHOP:
+                return Bitboards.bishopAttacks(sq, occupied);
+            case VirtualBoard.ROOK:
+                return Bitboards.rookAttacks(sq, occupied);
+            case VirtualBoard.QUEEN:
+                return Bitboards.queenAttacks(sq, occupied);
+            default:
+                return Bitboards.KING_ATTACKS[sq];
+        }
+    }
+
+    private static boolean isAttacked(int sq, int byColor, int[] pieces, int[] squares, long occupied) {
+        for (int i = 0; i < pieces.length; i++) {
+            if (squares[i] < 0 || VirtualBoard.pieceColor(pieces[i]) != byColor) {
+                continue;
+            }
+            long attacked = VirtualBoard.pieceType(pieces[i]) == VirtualBoard.PAWN
+                    ? Bitboards.PAWN_ATTACKS[byColor][squares[i]] : attacks(pieces[i], squares[i], occupied);
+            if ((attacked & 1L << sq) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] concat(Stream<int[]> parts) {
+        return parts.flatMapToInt(Arrays::stream).toArray();
+    }
+
+    // Growable int array for the positions a worker decides
+    private static class IntList {
+        private int[] values = new int[256];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path path = Paths.get(args.length > 0 ? args[0] : "bitbases.bin");
+        int maxMen = args.length > 1 ? Integer.parseInt(args[1]) : Bitbases.MAX_MEN;
+
+        BitbaseGenerator generator = new BitbaseGenerator();
+        long start = System.currentTimeMillis();
+        for (int code : materials(Math.min(maxMen, Bitbases.MAX_MEN))) {
+            long tableStart = System.currentTimeMillis();
+            byte[] table = generator.generate(code);
+            int wins = 0;
+            int losses = 0;
+            for (int index = 0; index < table.length * 4; index++) {
+                int value = Bitbases.get(table, index);
+                wins += value == WIN ? 1 : 0;
+                losses += value == LOSS ? 1 : 0;
+            }
+            System.out.printf("%-6s %10d positions %10d wins %10d losses %6d ms%n", materialName(code),
+                    table.length * 4, wins, losses, System.currentTimeMillis() - tableStart);
+        }
+        generator.write(path);
+        System.out.println("Wrote " + path + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
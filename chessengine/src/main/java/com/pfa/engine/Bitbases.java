@@ -0,0 +1,297 @@
+package com.pfa.engine;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Win/draw/loss bitbases for every ending with at most MAX_MEN pieces, kings included, read from the file
+// BitbaseGenerator writes. Each table holds 2 bits per position; a table is read into memory the first time
+// a position with its material is probed and stays cached after that, so later probes are one array access.
+// Castling rights and en passant captures are not covered: such positions are left to the search.
+public final class Bitbases {
+    public static final int MAX_MEN = 4;
+
+    // Probe results, for the side to move
+    public static final int UNKNOWN = -1;
+    public static final int DRAW = 0;
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+
+    static final int FILE_MAGIC = 0x50424231; // "PBB1"
+
+    // Non-king piece types in the order they are listed in a table, strongest first
+    static final int[] TABLE_TYPES = { VirtualBoard.QUEEN, VirtualBoard.ROOK, VirtualBoard.BISHOP,
+            VirtualBoard.KNIGHT, VirtualBoard.PAWN };
+    // Material codes count every non-king piece type of each color in base 3, so at most two of a kind
+    static final int MATERIAL_CODES = 59049; // 3^10
+
+    // Tables are indexed by side to move, then the white king square reduced by symmetry, then the other
+    // squares as they are. Without pawns the board's 8 symmetries put the white king in the a1-d1-d4
+    // triangle; with pawns only the left-right mirror applies and puts it on files a-d.
+    // KING_TRANSFORM[pawns][sq]: symmetry to apply for a white king on sq; KING_INDEX[pawns][sq]: index of
+    // the reduced square; KING_SQUARES[pawns][index]: the square back.
+    static final int[][] KING_TRANSFORM = new int[2][64];
+    static final int[][] KING_INDEX = new int[2][64];
+    static final int[][] KING_SQUARES = { new int[10], new int[32] };
+
+    static {
+        int[] counts = new int[2];
+        for (int sq = 0; sq < 64; sq++) {
+            int col = sq & 7;
+            int rank = 7 - (sq >> 3);
+            KING_INDEX[0][sq] = col <= 3 && rank <= col ? counts[0]++ : -1;
+            KING_INDEX[1][sq] = col <= 3 ? counts[1]++ : -1;
+            for (int pawns = 0; pawns < 2; pawns++) {
+                if (KING_INDEX[pawns][sq] >= 0) {
+                    KING_SQUARES[pawns][KING_INDEX[pawns][sq]] = sq;
+                }
+            }
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            for (int pawns = 0; pawns < 2; pawns++) {
+                int transform = 0;
+                while (KING_INDEX[pawns][transform(sq, transform)] < 0) {
+                    transform++;
+                }
+                KING_TRANSFORM[pawns][sq] = transform;
+            }
+        }
+    }
+
+    private final Path path;
+    // Where each table starts in the file and how long it is, by material code; -1 when not in the file
+    private final long[] offsets = new long[MATERIAL_CODES];
+    private final int[] lengths = new int[MATERIAL_CODES];
+    // Tables read so far; filled in lazily and never evicted, they are small
+    private final AtomicReferenceArray<byte[]> tables = new AtomicReferenceArray<>(MATERIAL_CODES);
+
+    private Bitbases(Path path) {
+        this.path = path;
+        Arrays.fill(offsets, -1);
+    }
+
+    // Reads the table directory of the file at path; returns null when there is no such file or it is
+    // not a bitbase file
+    public static Bitbases open(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        Bitbases bitbases = new Bitbases(path);
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            if (in.readInt() != FILE_MAGIC) {
+                System.err.println("Not a bitbase file: " + path);
+                return null;
+            }
+            int count = in.readInt();
+            long offset = 8;
+            for (int i = 0; i < count; i++) {
+                int code = in.readInt();
+                int length = in.readInt();
+                offset += 8;
+                bitbases.offsets[code] = offset;
+                bitbases.lengths[code] = length;
+                skipFully(in, length);
+                offset += length;
+            }
+            return bitbases;
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Error reading bitbases " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new IOException("Truncated file");
+            }
+            count -= skipped;
+        }
+    }
+
+    // Win, draw or loss for the side to move, or UNKNOWN when the position is not covered. pieces and squares
+    // are scratch space of at least MAX_MEN entries owned by the calling thread, so a probe allocates nothing.
+    public int probe(VirtualBoard position, int[] pieces, int[] squares) {
+        long occupied = position.getOccupied();
+        if (Long.bitCount(occupied) > MAX_MEN || position.getCastlingRights() != 0) {
+            return UNKNOWN;
+        }
+        int us = position.isWhiteToMove() ? VirtualBoard.WHITE : VirtualBoard.BLACK;
+        int ep = position.getEnPassantSquare();
+        if (ep >= 0 && (Bitboards.PAWN_ATTACKS[us ^ 1][ep]
+                & position.getPieceBitboard(VirtualBoard.makePiece(us, VirtualBoard.PAWN))) != 0) {
+            return UNKNOWN;
+        }
+
+        int count = 0;
+        for (long bits = occupied; bits != 0; bits &= bits - 1) {
+            int sq = Long.numberOfTrailingZeros(bits);
+            pieces[count] = position.getPieceAt(sq);
+            squares[count++] = sq;
+        }
+
+        // Tables only exist with the stronger side as white; otherwise look up the color-swapped position
+        int code = materialCode(pieces, count);
+        int stm = us;
+        if (!isCanonical(code)) {
+            for (int i = 0; i < count; i++) {
+                pieces[i] = VirtualBoard.makePiece(VirtualBoard.pieceColor(pieces[i]) ^ 1,
+                        VirtualBoard.pieceType(pieces[i]));
+                squares[i] ^= 56;
+            }
+            code = materialCode(pieces, count);
+            stm ^= 1;
+        }
+
+        byte[] table = table(code);
+        if (table == null) {
+            return UNKNOWN;
+        }
+        sortForTable(pieces, squares, count);
+        return get(table, index(stm, squares, count, hasPawns(code)));
+    }
+
+    private byte[] table(int code) {
+        byte[] table = tables.get(code);
+        if (table == null && offsets[code] >= 0) {
+            table = load(code);
+        }
+        return table;
+    }
+
+    private synchronized byte[] load(int code) {
+        if (tables.get(code) != null) {
+            return tables.get(code);
+        }
+        byte[] table = new byte[lengths[code]];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(table);
+            long position = offsets[code];
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Truncated file");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading bitbases " + path + ": " + e.getMessage());
+            offsets[code] = -1;
+            return null;
+        }
+        tables.set(code, table);
+        return table;
+    }
+
+    static int materialCode(int[] pieces, int count) {
+        int code = 0;
+        for (int i = 0; i < count; i++) {
+            int type = VirtualBoard.pieceType(pieces[i]);
+            if (type != VirtualBoard.KING) {
+                code += power3(VirtualBoard.pieceColor(pieces[i]) * 5 + type);
+            }
+        }
+        return code;
+    }
+
+    static int pieceCount(int code, int color, int type) {
+        return code / power3(color * 5 + type) % 3;
+    }
+
+    static boolean hasPawns(int code) {
+        return pieceCount(code, VirtualBoard.WHITE, VirtualBoard.PAWN) + pieceCount(code,
+                VirtualBoard.BLACK, VirtualBoard.PAWN) > 0;
+    }
+
+    // True when white has at least as much as black: more pieces, or as many with stronger types first
+    static boolean isCanonical(int code) {
+        int whiteCount = 0;
+        int blackCount = 0;
+        for (int type : TABLE_TYPES) {
+            whiteCount += pieceCount(code, VirtualBoard.WHITE, type);
+            blackCount += pieceCount(code, VirtualBoard.BLACK, type);
+        }
+        if (whiteCount != blackCount) {
+            return whiteCount > blackCount;
+        }
+        for (int type : TABLE_TYPES) {
+            int difference = pieceCount(code, VirtualBoard.WHITE, type)
+                    - pieceCount(code, VirtualBoard.BLACK, type);
+            if (difference != 0) {
+                return difference > 0;
+            }
+        }
+        return true;
+    }
+
+    private static int power3(int exponent) {
+        int power = 1;
+        for (int i = 0; i < exponent; i++) {
+            power *= 3;
+        }
+        return power;
+    }
+
+    // Puts pieces in table order: white king, black king, then white and black pieces strongest first
+    static void sortForTable(int[] pieces, int[] squares, int count) {
+        for (int i = 1; i < count; i++) {
+            int piece = pieces[i];
+            int sq = squares[i];
+            int j = i - 1;
+            while (j >= 0 && tableOrder(pieces[j]) > tableOrder(piece)) {
+                pieces[j + 1] = pieces[j];
+                squares[j + 1] = squares[j];
+                j--;
+            }
+            pieces[j + 1] = piece;
+            squares[j + 1] = sq;
+        }
+    }
+
+    private static int tableOrder(int piece) {
+        int type = VirtualBoard.pieceType(piece);
+        int color = VirtualBoard.pieceColor(piece);
+        return type == VirtualBoard.KING ? color : 2 + color * 6 + (VirtualBoard.QUEEN - type);
+    }
+
+    // Number of positions in a table with count pieces
+    static int tableSize(int count, boolean pawns) {
+        return 2 * KING_SQUARES[pawns ? 1 : 0].length << (6 * (count - 1));
+    }
+
+    // Index of a position whose pieces are in table order, after reducing its squares by symmetry
+    static int index(int stm, int[] squares, int count, boolean pawns) {
+        int symmetry = pawns ? 1 : 0;
+        int transform = KING_TRANSFORM[symmetry][squares[0]];
+        int index = stm * KING_SQUARES[symmetry].length + KING_INDEX[symmetry][transform(squares[0], transform)];
+        for (int i = 1; i < count; i++) {
+            index = index << 6 | transform(squares[i], transform);
+        }
+        return index;
+    }
+
+    // Applies one of the 8 board symmetries: bit 2 swaps rows and columns, bit 1 mirrors top and bottom,
+    // bit 0 mirrors left and right. Transform 0 is the identity.
+    static int transform(int sq, int transform) {
+        if ((transform & 4) != 0) {
+            sq = (sq >> 3) | (sq & 7) << 3;
+        }
+        if ((transform & 2) != 0) {
+            sq ^= 56;
+        }
+        if ((transform & 1) != 0) {
+            sq ^= 7;
+        }
+        return sq;
+    }
+
+    static int get(byte[] table, int index) {
+        return table[index >> 2] >> ((index & 3) << 1) & 3;
+    }
+}
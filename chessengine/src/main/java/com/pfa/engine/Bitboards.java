@@ -0,0 +1,113 @@
+package com.pfa.engine;
+
+// Precomputed attack tables for the engine.
+// Squares use the same numbering as Board.getTilenumber: square = row * 8 + col,
+// so square 0 is the top-left corner (black's queen-side rook) and white pawns move towards row 0.
+public final class Bitboards {
+    public static final int NORTH = 0;
+    public static final int EAST = 1;
+    public static final int SOUTH = 2;
+    public static final int WEST = 3;
+    public static final int NORTH_EAST = 4;
+    public static final int SOUTH_EAST = 5;
+    public static final int SOUTH_WEST = 6;
+    public static final int NORTH_WEST = 7;
+
+    private static final int[] DIR_COL = { 0, 1, 0, -1, 1, 1, -1, -1 };
+    private static final int[] DIR_ROW = { -1, 0, 1, 0, -1, 1, 1, -1 };
+    // Directions in which the square index grows, so the first blocker is the lowest set bit
+    private static final boolean[] DIR_POSITIVE = { false, true, true, false, false, true, true, false };
+
+    public static final long[] KNIGHT_ATTACKS = new long[64];
+    public static final long[] KING_ATTACKS = new long[64];
+    // PAWN_ATTACKS[color][square]: squares attacked by a pawn of that color standing on square
+    public static final long[][] PAWN_ATTACKS = new long[2][64];
+    // RAYS[direction][square]: every square in that direction up to the edge of the board
+    public static final long[][] RAYS = new long[8][64];
+    // BETWEEN[a][b]: squares strictly between a and b when they share a line, otherwise 0
+    public static final long[][] BETWEEN = new long[64][64];
+    // LINE[a][b]: the whole board line through a and b when they share one, otherwise 0
+    public static final long[][] LINE = new long[64][64];
+
+    static {
+        int[][] knightOffsets = { { 1, 2 }, { 2, 1 }, { 2, -1 }, { 1, -2 }, { -1, -2 }, { -2, -1 }, { -2, 1 },
+                { -1, 2 } };
+
+        for (int sq = 0; sq < 64; sq++) {
+            int col = sq & 7;
+            int row = sq >> 3;
+
+            for (int[] offset : knightOffsets) {
+                KNIGHT_ATTACKS[sq] |= bit(col + offset[0], row + offset[1]);
+            }
+
+            for (int dcol = -1; dcol <= 1; dcol++) {
+                for (int drow = -1; drow <= 1; drow++) {
+                    if (dcol != 0 || drow != 0) {
+                        KING_ATTACKS[sq] |= bit(col + dcol, row + drow);
+                    }
+                }
+            }
+
+            PAWN_ATTACKS[VirtualBoard.WHITE][sq] = bit(col - 1, row - 1) | bit(col + 1, row - 1);
+            PAWN_ATTACKS[VirtualBoard.BLACK][sq] = bit(col - 1, row + 1) | bit(col + 1, row + 1);
+
+            for (int dir = 0; dir < 8; dir++) {
+                for (int step = 1; step < 8; step++) {
+                    long b = bit(col + DIR_COL[dir] * step, row + DIR_ROW[dir] * step);
+                    if (b == 0) {
+                        break;
+                    }
+                    RAYS[dir][sq] |= b;
+                }
+            }
+        }
+
+        for (int sq = 0; sq < 64; sq++) {
+            for (int dir = 0; dir < 8; dir++) {
+                int opposite = dir < 4 ? (dir + 2) % 4 : 4 + (dir - 2) % 4;
+                for (long ray = RAYS[dir][sq]; ray != 0; ray &= ray - 1) {
+                    int target = Long.numberOfTrailingZeros(ray);
+                    BETWEEN[sq][target] = RAYS[dir][sq] & RAYS[opposite][target];
+                    LINE[sq][target] = RAYS[dir][sq] | RAYS[opposite][sq] | (1L << sq);
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    // Returns the single-bit mask for (col,row), or 0 when the square is off the board
+    private static long bit(int col, int row) {
+        if (col < 0 || col > 7 || row < 0 || row > 7) {
+            return 0L;
+        }
+        return 1L << (row * 8 + col);
+    }
+
+    public static long rayAttacks(int dir, int sq, long occupied) {
+        long attacks = RAYS[dir][sq];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            int blocker = DIR_POSITIVE[dir] ? Long.numberOfTrailingZeros(blockers)
+                    : 63 - Long.numberOfLeadingZeros(blockers);
+            attacks ^= RAYS[dir][blocker];
+        }
+        return attacks;
+    }
+
+    public static long rookAttacks(int sq, long occupied) {
+        return rayAttacks(NORTH, sq, occupied) | rayAttacks(EAST, sq, occupied)
+                | rayAttacks(SOUTH, sq, occupied) | rayAttacks(WEST, sq, occupied);
+    }
+
+    public static long bishopAttacks(int sq, long occupied) {
+        return rayAttacks(NORTH_EAST, sq, occupied) | rayAttacks(SOUTH_EAST, sq, occupied)
+                | rayAttacks(SOUTH_WEST, sq, occupied) | rayAttacks(NORTH_WEST, sq, occupied);
+    }
+
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+}
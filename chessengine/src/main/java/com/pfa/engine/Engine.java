@@ -0,0 +1,261 @@
+package com.pfa.engine;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Search front end: owns the transposition table, the search threads, the opening book and the bitbases,
+// and runs one search at a time on the calling thread. Needs no GUI; the client drives it through AIController.
+public class Engine {
+    public static final int DEFAULT_HASH_MB = 16;
+
+    // Polyglot book consulted before searching in games; the file named by the chess.book system property,
+    // book.bin in the working directory by default. Null when there is none.
+    private static final PolyglotBook BOOK = PolyglotBook.open(Paths.get(System.getProperty("chess.book",
+            "book.bin")));
+
+    // Win/draw/loss tables for endings with few pieces, made by BitbaseGenerator; the file named by the
+    // chess.bitbases system property, bitbases.bin in the working directory by default. Null when there is none.
+    private static final Bitbases BITBASES = Bitbases.open(Paths.get(System.getProperty("chess.bitbases",
+            "bitbases.bin")));
+
+    private static final AtomicBoolean NOT_PONDERING = new AtomicBoolean(false);
+
+    private final boolean useMobility;
+
+    // Kept across moves so later searches reuse earlier results; shared by all search threads
+    private TranspositionTable transpositionTable = new TranspositionTable(DEFAULT_HASH_MB);
+
+    // Worker 0 runs on the calling thread, the others on helperPool
+    private SearchWorker[] workers;
+    private ExecutorService helperPool;
+    // Stop flag of the search in progress; each search gets a fresh one so stopping an old search
+    // can never stop the next
+    private volatile AtomicBoolean activeStop = new AtomicBoolean(true);
+
+    // Result of the most recent search, taken from the worker that completed the deepest iteration
+    private int completedDepth;
+    private int lastScore;
+    // Reply expected after the move found by the last search
+    private int ponderMove = PackedMove.NONE;
+    private final int[] rootMoves = new int[VirtualBoard.MAX_MOVES];
+    // Scratch space for the bitbase probes at the root
+    private final int[] probePieces = new int[Bitbases.MAX_MEN];
+    private final int[] probeSquares = new int[Bitbases.MAX_MEN];
+    // Null when nobody listens
+    private volatile SearchListener listener;
+
+    public Engine(int threads, boolean useMobility) {
+        this.useMobility = useMobility;
+        setThreads(threads);
+    }
+
+    // Number of threads searching in parallel; 1 disables the helpers. Not while a search is running.
+    public void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (workers != null && workers.length == threads) {
+            return;
+        }
+        createWorkers(threads);
+    }
+
+    private void createWorkers(int threads) {
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+
+        workers = new SearchWorker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new SearchWorker(this, i, transpositionTable, new Evaluator(useMobility), BITBASES);
+        }
+        if (threads > 1) {
+            helperPool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "Search helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getThreads() {
+        return workers.length;
+    }
+
+    // Replaces the transposition table with an empty one of about sizeMb megabytes. Not while a search is
+    // running.
+    public void setHashSize(int sizeMb) {
+        transpositionTable = new TranspositionTable(Math.max(1, sizeMb));
+        createWorkers(workers.length);
+    }
+
+    // Forgets everything learned in earlier searches, e.g. before a new game: the transposition table and every
+    // worker's history and countermove tables. Not while a search is running.
+    public void clearHash() {
+        transpositionTable.clear();
+        for (SearchWorker worker : workers) {
+            worker.getMoveOrdering().clear();
+        }
+    }
+
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    // Called by the main worker after each completed iteration
+    void iterationCompleted(int depth, int score, long startTime, int[] pv, int pvLength) {
+        SearchListener current = listener;
+        if (current != null) {
+            current.iterationCompleted(depth, score, getNodes(), System.currentTimeMillis() - startTime, pv,
+                    pvLength);
+        }
+    }
+
+    // Asks the search started by findBestMove to return as soon as possible with the best move found so far
+    public void stop() {
+        activeStop.set(true);
+    }
+
+    // A book move for the position, or PackedMove.NONE when there is no book or the position is not in it
+    public int probeBook(VirtualBoard position, Random random) {
+        int move = BOOK == null ? PackedMove.NONE : BOOK.probe(position, random);
+        if (move != PackedMove.NONE) {
+            completedDepth = 0;
+            lastScore = 0;
+            ponderMove = PackedMove.NONE;
+        }
+        return move;
+    }
+
+    // Fixed-depth search of any position for the side to move, without a time limit.
+    // Returns the best move in PackedMove form, or PackedMove.NONE when there is no legal move.
+    public int findBestMove(VirtualBoard position, int depth) {
+        return findBestMove(position, SearchLimits.depth(depth));
+    }
+
+    public int findBestMove(VirtualBoard position, SearchLimits searchLimits) {
+        int moveCount = position.generateLegalMoves(rootMoves, 0);
+        if (moveCount == 0) {
+            return PackedMove.NONE;
+        }
+        AtomicBoolean stopFlag = new AtomicBoolean();
+        activeStop = stopFlag;
+        return search(position, rootMoves, moveCount, searchLimits, stopFlag, NOT_PONDERING);
+    }
+
+    // Searches position over rootMoves[0..moveCount), which are reordered in place. Runs every worker on the
+    // same root and waits for all of them. The main worker decides when to stop; the move comes from whichever
+    // worker completed the deepest iteration, the main worker on ties. Setting stopFlag ends the search, and
+    // while ponderFlag is set the search ignores its budget and only stops when told to.
+    public int search(VirtualBoard position, int[] rootMoves, int moveCount, SearchLimits searchLimits,
+            AtomicBoolean stopFlag, AtomicBoolean ponderFlag) {
+        long startTime = System.currentTimeMillis();
+        transpositionTable.newSearch();
+        moveCount = keepBestBitbaseMoves(position, rootMoves, moveCount);
+
+        // Sort moves to improve alpha-beta pruning, trying the stored best move first
+        long rootEntry = transpositionTable.probe(position.getZobristKey());
+        int ttMove = rootEntry != 0 ? TranspositionTable.getMove(rootEntry) : PackedMove.NONE;
+        int[] scores = new int[moveCount];
+        workers[0].getMoveOrdering().scoreMoves(position, rootMoves, moveCount, scores, ttMove,
+                PackedMove.NONE, 0, PackedMove.NONE);
+        for (int i = 0; i < moveCount; i++) {
+            MoveOrdering.pickMove(rootMoves, scores, i, moveCount);
+        }
+
+        for (SearchWorker worker : workers) {
+            worker.setup(position, rootMoves, moveCount, searchLimits, startTime, stopFlag, ponderFlag);
+        }
+
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < workers.length; i++) {
+            helpers.add(helperPool.submit(workers[i]));
+        }
+
+        workers[0].run();
+        stopFlag.set(true);
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+
+        SearchWorker best = workers[0];
+        for (SearchWorker worker : workers) {
+            if (worker.getCompletedDepth() > best.getCompletedDepth()) {
+                best = worker;
+            }
+        }
+        completedDepth = best.getCompletedDepth();
+        lastScore = best.getLastScore();
+        ponderMove = best.getPonderMove();
+        return best.getBestMove();
+    }
+
+    // When the bitbases cover the root, drops the root moves that do worse than the best one: a won position
+    // is never thrown away to a draw, and the search only has to find the fastest way to convert it.
+    // Returns the number of moves kept at the start of rootMoves, in their original order.
+    private int keepBestBitbaseMoves(VirtualBoard position, int[] rootMoves, int moveCount) {
+        if (BITBASES == null || BITBASES.probe(position, probePieces, probeSquares) == Bitbases.UNKNOWN) {
+            return moveCount;
+        }
+
+        // 2 for a move into a position the opponent loses, 1 for a draw or a position not covered, 0 otherwise
+        int[] outcomes = new int[moveCount];
+        int best = 0;
+        for (int i = 0; i < moveCount; i++) {
+            position.makeMove(rootMoves[i]);
+            int result = BITBASES.probe(position, probePieces, probeSquares);
+            position.undoMove();
+            outcomes[i] = result == Bitbases.LOSS ? 2 : result == Bitbases.WIN ? 0 : 1;
+            best = Math.max(best, outcomes[i]);
+        }
+
+        int kept = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if (outcomes[i] == best) {
+                rootMoves[kept++] = rootMoves[i];
+            }
+        }
+        return kept;
+    }
+
+    // Depth reached by the last completed iteration of the most recent search
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    // Score of the last completed iteration, from the side to move's point of view
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    // Opponent's expected reply to the move found by the most recent search, or PackedMove.NONE
+    public int getPonderMove() {
+        return ponderMove;
+    }
+
+    // Nodes searched by all threads in the current or most recent search
+    public long getNodes() {
+        long nodes = 0;
+        for (SearchWorker worker : workers) {
+            nodes += worker.getNodes();
+        }
+        return nodes;
+    }
+
+    // Static evaluation in centipawns from the side to move's point of view
+    public int evaluate(VirtualBoard position) {
+        return workers[0].getEvaluator().evaluate(position);
+    }
+}
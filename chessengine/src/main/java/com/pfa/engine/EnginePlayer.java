@@ -0,0 +1,33 @@
+package com.pfa.engine;
+
+// Match player searching with an Engine in this process, on the calling thread
+public class EnginePlayer implements MatchPlayer {
+    private final Engine engine;
+
+    public EnginePlayer(boolean useMobility, int hashMb) {
+        engine = new Engine(1, useMobility);
+        if (hashMb != Engine.DEFAULT_HASH_MB) {
+            engine.setHashSize(hashMb);
+        }
+    }
+
+    @Override
+    public void newGame() {
+        engine.clearHash();
+    }
+
+    @Override
+    public int chooseMove(VirtualBoard position, String startFen, int[] moves, int moveCount, SearchLimits limits) {
+        return engine.findBestMove(new VirtualBoard(position), limits);
+    }
+
+    @Override
+    public long getLastNodes() {
+        return engine.getNodes();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release: a single-threaded engine has no helper pool
+    }
+}
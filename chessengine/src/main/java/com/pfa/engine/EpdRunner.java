@@ -0,0 +1,265 @@
+package com.pfa.engine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Test-suite solver: searches every position of an EPD file and checks the move found against its bm (best
+// move) and am (avoid move) operations, as in Win At Chess or the Strategic Test Suite. Positions are shared
+// out over a fork-join pool, each worker thread with a single-threaded Engine of its own, so a suite takes
+// about 1/n of the time on n cores while every position still gets the full budget of one search thread.
+// Usage: java com.pfa.engine.EpdRunner <file> [-movetime ms | -depth d | -nodes n] [-concurrency n] [-hash mb]
+public class EpdRunner {
+    // One line of the suite; a position is solved when the move played is among bestMoves (if there are any)
+    // and not among avoidMoves
+    private static final class TestPosition {
+        final int index;
+        final String id;
+        final VirtualBoard position;
+        final int[] bestMoves;
+        final int[] avoidMoves;
+        final String expected;
+
+        TestPosition(int index, String id, VirtualBoard position, int[] bestMoves, int[] avoidMoves,
+                String expected) {
+            this.index = index;
+            this.id = id;
+            this.position = position;
+            this.bestMoves = bestMoves;
+            this.avoidMoves = avoidMoves;
+            this.expected = expected;
+        }
+
+        boolean isSolvedBy(int move) {
+            return move != PackedMove.NONE && (bestMoves.length == 0 || contains(bestMoves, move))
+                    && !contains(avoidMoves, move);
+        }
+    }
+
+    private static final class Result {
+        final TestPosition test;
+        final int move;
+        final boolean solved;
+        // Time from which the search kept a solving move until it ended, or -1 when not solved
+        final long solvedMs;
+        final long elapsedMs;
+        final long nodes;
+        final int depth;
+
+        Result(TestPosition test, int move, boolean solved, long solvedMs, long elapsedMs, long nodes, int depth) {
+            this.test = test;
+            this.move = move;
+            this.solved = solved;
+            this.solvedMs = solvedMs;
+            this.elapsedMs = elapsedMs;
+            this.nodes = nodes;
+            this.depth = depth;
+        }
+    }
+
+    private final List<TestPosition> tests;
+    private final SearchLimits limits;
+    private final int concurrency;
+    private final int hashMb;
+
+    // Each pool thread keeps its engine from one position to the next
+    private final ThreadLocal<Engine> engines;
+
+    private EpdRunner(List<TestPosition> tests, SearchLimits limits, int concurrency, int hashMb) {
+        this.tests = tests;
+        this.limits = limits;
+        this.concurrency = concurrency;
+        this.hashMb = hashMb;
+        this.engines = ThreadLocal.withInitial(() -> {
+            Engine engine = new Engine(1, true);
+            engine.setHashSize(hashMb);
+            return engine;
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java com.pfa.engine.EpdRunner <file> [-movetime ms | -depth d | -nodes n]"
+                    + " [-concurrency n] [-hash mb]");
+            System.exit(2);
+        }
+        SearchLimits limits = SearchLimits.time(5000);
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        int hashMb = Engine.DEFAULT_HASH_MB;
+
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-movetime":
+                    limits = SearchLimits.time(Long.parseLong(value));
+                    break;
+                case "-depth":
+                    limits = SearchLimits.depth(Math.min(Integer.parseInt(value), SearchLimits.MAX_DEPTH));
+                    break;
+                case "-nodes":
+                    limits = SearchLimits.nodes(Long.parseLong(value));
+                    break;
+                case "-concurrency":
+                    concurrency = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "-hash":
+                    hashMb = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        new EpdRunner(readSuite(args[0]), limits, concurrency, hashMb).run();
+    }
+
+    // EPD lines: the first four FEN fields, then operations ending in ';' such as bm Qxf7+; or id "WAC.001";
+    // Blank lines and lines starting with # are skipped.
+    private static List<TestPosition> readSuite(String file) throws IOException {
+        List<TestPosition> tests = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+", 5);
+            if (fields.length < 4) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": not an EPD position");
+            }
+            VirtualBoard position = VirtualBoard.fromFen(fields[0] + " " + fields[1] + " " + fields[2] + " "
+                    + fields[3]);
+
+            String id = "#" + lineNumber;
+            List<String> best = new ArrayList<>();
+            List<String> avoid = new ArrayList<>();
+            String operations = fields.length > 4 ? fields[4] : "";
+            for (String operation : operations.split(";")) {
+                String[] words = operation.trim().split("\\s+");
+                if (words[0].equals("id") && words.length > 1) {
+                    id = operation.trim().substring(2).trim().replace("\"", "");
+                }
+                for (int i = 1; i < words.length; i++) {
+                    if (words[0].equals("bm")) {
+                        best.add(words[i]);
+                    } else if (words[0].equals("am")) {
+                        avoid.add(words[i]);
+                    }
+                }
+            }
+            if (best.isEmpty() && avoid.isEmpty()) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": no bm or am operation");
+            }
+
+            String expected = (best.isEmpty() ? "" : "bm " + String.join(" ", best))
+                    + (avoid.isEmpty() ? "" : (best.isEmpty() ? "" : ", ") + "am " + String.join(" ", avoid));
+            tests.add(new TestPosition(tests.size(), id, position, parseMoves(position, best, lineNumber),
+                    parseMoves(position, avoid, lineNumber), expected));
+        }
+        if (tests.isEmpty()) {
+            throw new IllegalArgumentException("No positions in " + file);
+        }
+        return tests;
+    }
+
+    // Moves in SAN, or in coordinate notation as some suites write them
+    private static int[] parseMoves(VirtualBoard position, List<String> texts, int lineNumber) {
+        int[] moves = new int[texts.size()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = San.parse(position, texts.get(i));
+            if (moves[i] == PackedMove.NONE) {
+                moves[i] = PackedMove.parse(position, texts.get(i));
+            }
+            if (moves[i] == PackedMove.NONE) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": illegal move " + texts.get(i));
+            }
+        }
+        return moves;
+    }
+
+    public void run() {
+        System.out.printf("%d positions on %d threads, hash %d MB per thread%n", tests.size(), concurrency, hashMb);
+        long start = System.currentTimeMillis();
+
+        ForkJoinPool pool = new ForkJoinPool(concurrency);
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+        for (TestPosition test : tests) {
+            tasks.add(pool.submit(() -> solve(test)));
+        }
+        List<Result> results = new ArrayList<>();
+        for (ForkJoinTask<Result> task : tasks) {
+            results.add(task.join());
+        }
+        pool.shutdown();
+
+        int solved = 0;
+        long solvedMs = 0;
+        long nodes = 0;
+        long searchMs = 0;
+        for (Result result : results) {
+            if (result.solved) {
+                solved++;
+                solvedMs += result.solvedMs;
+            }
+            nodes += result.nodes;
+            searchMs += result.elapsedMs;
+        }
+        System.out.printf("Solved %d of %d (%.1f%%), average time to solution %d ms, %d nodes, %d nps per thread%n",
+                solved, results.size(), 100.0 * solved / results.size(), solved == 0 ? 0 : solvedMs / solved,
+                nodes, nodes * 1000 / Math.max(1, searchMs));
+        System.out.println("Finished in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // Searches one position on the current pool thread and prints its line
+    private Result solve(TestPosition test) {
+        Engine engine = engines.get();
+        engine.clearHash();
+
+        // Elapsed time of the first iteration in the final unbroken run of solving iterations
+        long[] solvedSince = {-1};
+        engine.setListener((depth, score, nodes, elapsedMs, pv, pvLength) -> {
+            if (pvLength > 0 && test.isSolvedBy(pv[0])) {
+                solvedSince[0] = solvedSince[0] < 0 ? elapsedMs : solvedSince[0];
+            } else {
+                solvedSince[0] = -1;
+            }
+        });
+
+        VirtualBoard position = new VirtualBoard(test.position);
+        long start = System.currentTimeMillis();
+        int move = engine.findBestMove(position, limits);
+        long elapsedMs = System.currentTimeMillis() - start;
+        engine.setListener(null);
+
+        boolean solved = test.isSolvedBy(move);
+        // A move changed in an iteration the search did not finish has no completed iteration behind it
+        long solvedMs = !solved ? -1 : solvedSince[0] >= 0 ? solvedSince[0] : elapsedMs;
+        Result result = new Result(test, move, solved, solvedMs, elapsedMs, engine.getNodes(),
+                engine.getCompletedDepth());
+        print(result);
+        return result;
+    }
+
+    private static synchronized void print(Result result) {
+        String found = result.move == PackedMove.NONE ? "none" : San.toSan(new VirtualBoard(result.test.position),
+                result.move);
+        System.out.printf("%4d %-16s %-8s %-8s %-24s %7s %6d ms %10d nodes depth %d%n", result.test.index + 1,
+                result.test.id, result.solved ? "solved" : "failed", found, result.test.expected,
+                result.solved ? result.solvedMs + "ms" : "-", result.elapsedMs, result.nodes, result.depth);
+    }
+
+    private static boolean contains(int[] moves, int move) {
+        for (int candidate : moves) {
+            if (candidate == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
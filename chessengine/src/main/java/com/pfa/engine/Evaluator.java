@@ -0,0 +1,240 @@
+package com.pfa.engine;
+
+// Static evaluation of VirtualBoard positions. Each search thread owns one.
+public class Evaluator {
+    // Piece value constants
+    public static final int PAWN_VALUE = 100;
+    public static final int KNIGHT_VALUE = 320;
+    public static final int BISHOP_VALUE = 330;
+    public static final int ROOK_VALUE = 500;
+    public static final int QUEEN_VALUE = 900;
+    public static final int KING_VALUE = 20000;
+
+    // Indexed by VirtualBoard piece type
+    public static final int[] PIECE_VALUES = { PAWN_VALUE, KNIGHT_VALUE, BISHOP_VALUE, ROOK_VALUE, QUEEN_VALUE,
+            KING_VALUE };
+
+    // PIECE_SQUARE_VALUES[piece][square]: piece value plus positional bonus, negative for black pieces.
+    // VirtualBoard keeps the sum over all pieces up to date as moves are made and unmade.
+    public static final int[][] PIECE_SQUARE_VALUES = new int[12][64];
+
+    // Endings the bitbases prove won score from KNOWN_WIN up to KNOWN_WIN + KNOWN_WIN_RANGE: above any normal
+    // evaluation, below any mate
+    public static final int KNOWN_WIN = 5000;
+    private static final int KNOWN_WIN_RANGE = 2000;
+
+    // Centipawns per square attacked by a knight, bishop, rook or queen
+    private static final int MOBILITY_WEIGHT = 5;
+
+    // Pawn structure: penalties per doubled or isolated pawn, and bonuses for passed pawns by rank counted
+    // from the pawn's own side, doubled again while the square in front of the pawn is free
+    private static final int DOUBLED_PAWN_PENALTY = 15;
+    private static final int ISOLATED_PAWN_PENALTY = 12;
+    private static final int[] PASSED_PAWN_BONUS = { 0, 5, 10, 20, 35, 60, 100, 0 };
+    private static final int PAWN_TABLE_ENTRIES = 1 << 14;
+
+    // FILES[col]: every square of the file; ADJACENT_FILES[col]: the files either side of it
+    private static final long[] FILES = new long[8];
+    private static final long[] ADJACENT_FILES = new long[8];
+    // PASSED_PAWN_MASKS[color][square]: squares in front of a pawn on its own and adjacent files; no enemy
+    // pawn there means the pawn is passed
+    private static final long[][] PASSED_PAWN_MASKS = new long[2][64];
+
+    static {
+        for (int col = 0; col < 8; col++) {
+            FILES[col] = 0x0101010101010101L << col;
+        }
+        for (int col = 0; col < 8; col++) {
+            ADJACENT_FILES[col] = (col > 0 ? FILES[col - 1] : 0) | (col < 7 ? FILES[col + 1] : 0);
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            long files = FILES[sq & 7] | ADJACENT_FILES[sq & 7];
+            int row = sq >> 3;
+            // White pawns move towards row 0, black pawns towards row 7
+            PASSED_PAWN_MASKS[VirtualBoard.WHITE][sq] = files & ((1L << (row * 8)) - 1);
+            PASSED_PAWN_MASKS[VirtualBoard.BLACK][sq] = row == 7 ? 0 : files & (-1L << ((row + 1) * 8));
+        }
+
+        for (int type = VirtualBoard.PAWN; type <= VirtualBoard.KING; type++) {
+            for (int sq = 0; sq < 64; sq++) {
+                PIECE_SQUARE_VALUES[VirtualBoard.makePiece(VirtualBoard.WHITE, type)][sq] = PIECE_VALUES[type]
+                        + getPositionBonus(type, true, sq);
+                PIECE_SQUARE_VALUES[VirtualBoard.makePiece(VirtualBoard.BLACK, type)][sq] = -PIECE_VALUES[type]
+                        - getPositionBonus(type, false, sq);
+            }
+        }
+    }
+
+    private final boolean useMobility;
+
+    private final PawnHashTable pawnTable = new PawnHashTable(PAWN_TABLE_ENTRIES);
+
+    public Evaluator(boolean useMobility) {
+        this.useMobility = useMobility;
+    }
+
+    // Static evaluation in centipawns from the side to move's point of view. Material and piece-square terms
+    // are maintained incrementally by VirtualBoard and pawn structure comes from the pawn hash table; only
+    // mobility and the free path of passed pawns are computed here.
+    public int evaluate(VirtualBoard virtualBoard) {
+        int totalScore = virtualBoard.getPieceSquareScore();
+
+        long key = virtualBoard.getPawnKey();
+        int slot = pawnTable.slot(key);
+        if (!pawnTable.matches(slot, key)) {
+            evaluatePawns(virtualBoard, key, slot);
+        }
+        totalScore += pawnTable.getScore(slot);
+        long passed = pawnTable.getPassedPawns(slot);
+        if (passed != 0) {
+            totalScore += freePassedPawns(virtualBoard, passed);
+        }
+
+        if (useMobility) { // Only for higher difficulties
+            totalScore += (attackCount(virtualBoard, VirtualBoard.WHITE)
+                    - attackCount(virtualBoard, VirtualBoard.BLACK)) * MOBILITY_WEIGHT;
+        }
+
+        return virtualBoard.isWhiteToMove() ? totalScore : -totalScore;
+    }
+
+    // Score of a position the bitbases prove won for winner, from winner's point of view. The table only says
+    // the position is won, so this rewards material, driving the losing king to the edge, bringing the kings
+    // together and pushing pawns, which keeps the search making progress towards mate or promotion.
+    public static int knownWinScore(VirtualBoard virtualBoard, int winner) {
+        int material = virtualBoard.getPieceSquareScore();
+        if (winner == VirtualBoard.BLACK) {
+            material = -material;
+        }
+
+        int winnerKing = virtualBoard.findKing(winner);
+        int loserKing = virtualBoard.findKing(winner ^ 1);
+        int loserCol = loserKing & 7;
+        int loserRow = loserKing >> 3;
+        int edge = Math.max(3 - loserCol, loserCol - 4) + Math.max(3 - loserRow, loserRow - 4);
+        int kingDistance = Math.abs((winnerKing & 7) - loserCol) + Math.abs((winnerKing >> 3) - loserRow);
+
+        int pawnAdvance = 0;
+        for (long pawns = virtualBoard.getPieceBitboard(VirtualBoard.makePiece(winner, VirtualBoard.PAWN));
+                pawns != 0; pawns &= pawns - 1) {
+            int row = Long.numberOfTrailingZeros(pawns) >> 3;
+            pawnAdvance += winner == VirtualBoard.WHITE ? 6 - row : row - 1;
+        }
+
+        int progress = material + edge * 20 + (14 - kingDistance) * 5 + pawnAdvance * 20;
+        return KNOWN_WIN + Math.max(0, Math.min(KNOWN_WIN_RANGE, progress));
+    }
+
+    // Computes the pawn structure terms, which depend on the pawns alone, and stores them in the pawn table
+    private void evaluatePawns(VirtualBoard virtualBoard, long key, int slot) {
+        long[] pawns = {
+                virtualBoard.getPieceBitboard(VirtualBoard.makePiece(VirtualBoard.WHITE, VirtualBoard.PAWN)),
+                virtualBoard.getPieceBitboard(VirtualBoard.makePiece(VirtualBoard.BLACK, VirtualBoard.PAWN)) };
+        int score = 0;
+        long passed = 0;
+
+        for (int color = VirtualBoard.WHITE; color <= VirtualBoard.BLACK; color++) {
+            long own = pawns[color];
+            long enemy = pawns[color ^ 1];
+            int sign = color == VirtualBoard.WHITE ? 1 : -1;
+
+            for (int col = 0; col < 8; col++) {
+                int onFile = Long.bitCount(own & FILES[col]);
+                if (onFile > 1) {
+                    score -= sign * DOUBLED_PAWN_PENALTY * (onFile - 1);
+                }
+                if (onFile > 0 && (own & ADJACENT_FILES[col]) == 0) {
+                    score -= sign * ISOLATED_PAWN_PENALTY * onFile;
+                }
+            }
+
+            for (long bits = own; bits != 0; bits &= bits - 1) {
+                int sq = Long.numberOfTrailingZeros(bits);
+                if ((PASSED_PAWN_MASKS[color][sq] & enemy) == 0) {
+                    passed |= 1L << sq;
+                    score += sign * PASSED_PAWN_BONUS[relativeRank(color, sq)];
+                }
+            }
+        }
+
+        pawnTable.store(slot, key, score, passed);
+    }
+
+    // Passed pawns whose next square is empty earn their bonus a second time; this depends on the other
+    // pieces too, so it is not cached
+    private static int freePassedPawns(VirtualBoard virtualBoard, long passed) {
+        long empty = ~virtualBoard.getOccupied();
+        long white = passed & virtualBoard.getColorBitboard(VirtualBoard.WHITE);
+        long black = passed & virtualBoard.getColorBitboard(VirtualBoard.BLACK);
+        int score = 0;
+        for (long free = white & (empty << 8); free != 0; free &= free - 1) {
+            score += PASSED_PAWN_BONUS[relativeRank(VirtualBoard.WHITE, Long.numberOfTrailingZeros(free))];
+        }
+        for (long free = black & (empty >>> 8); free != 0; free &= free - 1) {
+            score -= PASSED_PAWN_BONUS[relativeRank(VirtualBoard.BLACK, Long.numberOfTrailingZeros(free))];
+        }
+        return score;
+    }
+
+    // Rank of a square counted from color's own side, 0 for its back rank
+    private static int relativeRank(int color, int square) {
+        return color == VirtualBoard.WHITE ? 7 - (square >> 3) : square >> 3;
+    }
+
+    // Squares attacked by the pieces of one color, other than pawns and king, that are not occupied by that
+    // color: a cheap stand-in for counting legal moves
+    private static int attackCount(VirtualBoard virtualBoard, int color) {
+        long own = virtualBoard.getColorBitboard(color);
+        long occupied = virtualBoard.getOccupied();
+        long queens = virtualBoard.getPieceBitboard(VirtualBoard.makePiece(color, VirtualBoard.QUEEN));
+        int count = 0;
+
+        for (long knights = virtualBoard.getPieceBitboard(VirtualBoard.makePiece(color, VirtualBoard.KNIGHT));
+                knights != 0; knights &= knights - 1) {
+            count += Long.bitCount(Bitboards.KNIGHT_ATTACKS[Long.numberOfTrailingZeros(knights)] & ~own);
+        }
+        for (long diagonal = virtualBoard.getPieceBitboard(VirtualBoard.makePiece(color, VirtualBoard.BISHOP))
+                | queens; diagonal != 0; diagonal &= diagonal - 1) {
+            count += Long.bitCount(Bitboards.bishopAttacks(Long.numberOfTrailingZeros(diagonal), occupied) & ~own);
+        }
+        for (long straight = virtualBoard.getPieceBitboard(VirtualBoard.makePiece(color, VirtualBoard.ROOK))
+                | queens; straight != 0; straight &= straight - 1) {
+            count += Long.bitCount(Bitboards.rookAttacks(Long.numberOfTrailingZeros(straight), occupied) & ~own);
+        }
+        return count;
+    }
+
+    private static int getPositionBonus(int type, boolean isWhite, int square) {
+        int col = square & 7;
+        int row = square >> 3;
+
+        if (!isWhite) {
+            row = 7 - row;
+        }
+
+        switch (type) {
+            case VirtualBoard.PAWN:
+                return 10 * (row - 1) + centralizationBonus(col, row, 3);
+            case VirtualBoard.KNIGHT:
+                return centralizationBonus(col, row, 5);
+            case VirtualBoard.BISHOP:
+                return centralizationBonus(col, row, 3);
+            case VirtualBoard.ROOK:
+                return (row == 6) ? 30 : 0;
+            case VirtualBoard.QUEEN:
+                return centralizationBonus(col, row, 2);
+            case VirtualBoard.KING:
+                int middlegameBonus = (col < 2 || col > 5) ? 20 : 0;
+                return middlegameBonus;
+            default:
+                return 0;
+        }
+    }
+
+    // Helper method for centralization bonus
+    private static int centralizationBonus(int col, int row, int factor) {
+        int fileDistance = Math.min(col, 7 - col);
+        int rankDistance = Math.min(row, 7 - row);
+        return factor * (fileDistance + rankDistance);
+    }
+}
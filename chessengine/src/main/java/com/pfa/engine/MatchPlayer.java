@@ -0,0 +1,18 @@
+package com.pfa.engine;
+
+// One side in engine-versus-engine games. Each instance is used by a single thread and plays one game at a
+// time, so games never share state.
+public interface MatchPlayer extends AutoCloseable {
+    // Forgets anything learned in the previous game
+    void newGame();
+
+    // The move to play in position, reached from startFen by moves[0..moveCount), within limits.
+    // Returns PackedMove.NONE when the player fails to produce a legal move.
+    int chooseMove(VirtualBoard position, String startFen, int[] moves, int moveCount, SearchLimits limits);
+
+    // Nodes searched by the last chooseMove, or 0 when unknown
+    long getLastNodes();
+
+    @Override
+    void close();
+}
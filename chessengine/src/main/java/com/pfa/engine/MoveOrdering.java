@@ -0,0 +1,185 @@
+package com.pfa.engine;
+
+import java.util.Arrays;
+
+// Move ordering for one search thread. Moves are scored once per node and then picked lazily, best first:
+// principal variation move, transposition table move, captures that do not lose material and queen promotions
+// by MVV-LVA, the two killer moves of the ply, the countermove to the opponent's last move, quiet moves by
+// butterfly history, then captures that lose material by static exchange evaluation.
+// Killers, history and countermoves learn from beta cutoffs during the search.
+public class MoveOrdering {
+    private static final int PV_SCORE = 4000000;
+    private static final int TT_SCORE = 3000000;
+    private static final int CAPTURE_SCORE = 2000000;
+    private static final int FIRST_KILLER_SCORE = 1900000;
+    private static final int SECOND_KILLER_SCORE = 1800000;
+    private static final int COUNTERMOVE_SCORE = 1700000;
+    // History scores are halved when one reaches this, so quiet moves always stay below the countermove
+    private static final int HISTORY_LIMIT = 1 << 20;
+    // Below every history score, above underpromotions
+    private static final int LOSING_CAPTURE_SCORE = -HISTORY_LIMIT - 1000;
+
+    private final int[][] killers;
+    // history[color][from][to]: cutoffs caused by a quiet move minus times it failed, weighted by depth
+    private final int[][][] history = new int[2][64][64];
+    // countermoves[piece][to]: the quiet move that last refuted the opponent moving piece to that square
+    private final int[][] countermoves = new int[12][64];
+
+    public MoveOrdering(int maxPly) {
+        killers = new int[maxPly][2];
+    }
+
+    // Called at the start of every search: killers belong to the old position, history is only faded
+    public void newSearch() {
+        for (int[] plyKillers : killers) {
+            plyKillers[0] = PackedMove.NONE;
+            plyKillers[1] = PackedMove.NONE;
+        }
+        for (int[][] colorHistory : history) {
+            for (int[] fromHistory : colorHistory) {
+                for (int to = 0; to < 64; to++) {
+                    fromHistory[to] >>= 1;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        newSearch();
+        for (int[][] colorHistory : history) {
+            for (int[] fromHistory : colorHistory) {
+                Arrays.fill(fromHistory, 0);
+            }
+        }
+        for (int[] pieceCountermoves : countermoves) {
+            Arrays.fill(pieceCountermoves, PackedMove.NONE);
+        }
+    }
+
+    // Fills scores[0..count) for moves[0..count) at the given ply. previousMove is the opponent's last move,
+    // or PackedMove.NONE at the root.
+    public void scoreMoves(VirtualBoard position, int[] moves, int count, int[] scores, int ttMove, int pvMove,
+            int ply, int previousMove) {
+        int killer1 = killers[ply][0];
+        int killer2 = killers[ply][1];
+        int countermove = previousMove == PackedMove.NONE ? PackedMove.NONE
+                : countermoves[PackedMove.piece(previousMove)][PackedMove.to(previousMove)];
+
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (move == pvMove) {
+                scores[i] = PV_SCORE;
+            } else if (move == ttMove) {
+                scores[i] = TT_SCORE;
+            } else if (PackedMove.isCapture(move) || PackedMove.flags(move) == PackedMove.PROMOTE_QUEEN) {
+                scores[i] = (isLosing(position, move) ? LOSING_CAPTURE_SCORE : CAPTURE_SCORE) + mvvLva(move);
+            } else if (PackedMove.isPromotion(move)) {
+                scores[i] = -2 * HISTORY_LIMIT; // Underpromotions last
+            } else if (move == killer1) {
+                scores[i] = FIRST_KILLER_SCORE;
+            } else if (move == killer2) {
+                scores[i] = SECOND_KILLER_SCORE;
+            } else if (move == countermove) {
+                scores[i] = COUNTERMOVE_SCORE;
+            } else {
+                int to = PackedMove.to(move);
+                scores[i] = history[VirtualBoard.pieceColor(PackedMove.piece(move))][PackedMove.from(move)][to]
+                        + getCenterControlValue(to & 7, to >> 3);
+            }
+        }
+    }
+
+    // Most valuable victim first, least valuable attacker among equal victims; a queen promotion counts as
+    // winning a queen
+    private static int mvvLva(int move) {
+        int victim = PackedMove.isCapture(move) ? VirtualBoard.pieceType(PackedMove.captured(move)) : 0;
+        if (PackedMove.flags(move) == PackedMove.PROMOTE_QUEEN) {
+            victim += VirtualBoard.QUEEN;
+        }
+        return victim * 8 + VirtualBoard.KING - VirtualBoard.pieceType(PackedMove.piece(move));
+    }
+
+    // Only a capture by a piece worth more than its victim can lose material, so SEE is skipped otherwise
+    private static boolean isLosing(VirtualBoard position, int move) {
+        if (PackedMove.isPromotion(move)) {
+            return false;
+        }
+        int attacker = Evaluator.PIECE_VALUES[VirtualBoard.pieceType(PackedMove.piece(move))];
+        int victim = Evaluator.PIECE_VALUES[VirtualBoard.pieceType(PackedMove.captured(move))];
+        return attacker > victim && position.see(move) < 0;
+    }
+
+    // True for the score scoreMoves gives a capture that loses material
+    public static boolean isLosingCapture(int score) {
+        return score < LOSING_CAPTURE_SCORE + 1000 && score >= LOSING_CAPTURE_SCORE;
+    }
+
+    // True for the score of a quiet move without a killer or countermove bonus, or of a losing capture: the
+    // moves late move reductions may search shallower
+    public static boolean isLateMove(int score) {
+        return score < COUNTERMOVE_SCORE && score > -2 * HISTORY_LIMIT;
+    }
+
+    // Selection step: swaps the best scored move of [index, count) into index and returns it, so a node that
+    // cuts off early never pays for ordering the rest of the list
+    public static int pickMove(int[] moves, int[] scores, int index, int count) {
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        if (best != index) {
+            moves[best] = moves[index];
+            moves[index] = move;
+            int score = scores[best];
+            scores[best] = scores[index];
+            scores[index] = score;
+        }
+        return move;
+    }
+
+    // Records a quiet move that caused a beta cutoff at the given ply and remaining depth. The quiet moves in
+    // triedMoves[0..triedCount) were searched before it without a cutoff and lose the same history bonus.
+    public void updateQuiet(int move, int ply, int depth, int previousMove, int[] triedMoves, int triedCount) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+
+        if (previousMove != PackedMove.NONE) {
+            countermoves[PackedMove.piece(previousMove)][PackedMove.to(previousMove)] = move;
+        }
+
+        int bonus = depth * depth;
+        for (int i = 0; i < triedCount; i++) {
+            int tried = triedMoves[i];
+            if (!PackedMove.isCapture(tried) && !PackedMove.isPromotion(tried)) {
+                int color = VirtualBoard.pieceColor(PackedMove.piece(tried));
+                int[] fromHistory = history[color][PackedMove.from(tried)];
+                int to = PackedMove.to(tried);
+                fromHistory[to] = Math.max(-HISTORY_LIMIT, fromHistory[to] - bonus);
+            }
+        }
+
+        int[] fromHistory = history[VirtualBoard.pieceColor(PackedMove.piece(move))][PackedMove.from(move)];
+        int to = PackedMove.to(move);
+        fromHistory[to] += bonus;
+        if (fromHistory[to] >= HISTORY_LIMIT) {
+            for (int[][] colorHistory : history) {
+                for (int[] entries : colorHistory) {
+                    for (int i = 0; i < 64; i++) {
+                        entries[i] >>= 1;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int getCenterControlValue(int col, int row) {
+        int colDist = Math.min(col, 7 - col);
+        int rowDist = Math.min(row, 7 - row);
+        return 8 - (colDist + rowDist);
+    }
+}
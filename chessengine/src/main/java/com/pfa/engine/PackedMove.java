@@ -0,0 +1,85 @@
+package com.pfa.engine;
+
+// Engine moves packed into a single int so move lists are plain int arrays:
+// bits 0-5 from square, 6-11 to square, 12-15 moving piece, 16-19 captured piece (VirtualBoard.EMPTY if none),
+// 20-23 flags. Squares use VirtualBoard numbering (row * 8 + col).
+public final class PackedMove {
+    public static final int NONE = 0;
+
+    public static final int QUIET = 0;
+    public static final int DOUBLE_PUSH = 1;
+    public static final int EN_PASSANT = 2;
+    public static final int CASTLE = 3;
+    public static final int PROMOTE_KNIGHT = 4;
+    public static final int PROMOTE_BISHOP = 5;
+    public static final int PROMOTE_ROOK = 6;
+    public static final int PROMOTE_QUEEN = 7;
+
+    private PackedMove() {
+    }
+
+    public static int encode(int from, int to, int piece, int captured, int flags) {
+        return from | to << 6 | piece << 12 | captured << 16 | flags << 20;
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static int piece(int move) {
+        return (move >>> 12) & 0xF;
+    }
+
+    public static int captured(int move) {
+        return (move >>> 16) & 0xF;
+    }
+
+    public static int flags(int move) {
+        return (move >>> 20) & 0xF;
+    }
+
+    public static boolean isCapture(int move) {
+        return captured(move) != VirtualBoard.EMPTY;
+    }
+
+    public static boolean isPromotion(int move) {
+        return flags(move) >= PROMOTE_KNIGHT;
+    }
+
+    // Piece type the pawn becomes; only meaningful when isPromotion is true
+    public static int promotionType(int move) {
+        return flags(move) - PROMOTE_KNIGHT + VirtualBoard.KNIGHT;
+    }
+
+    public static String squareName(int sq) {
+        return "" + (char) ('a' + (sq & 7)) + (char) ('8' - (sq >> 3));
+    }
+
+    // Coordinate notation such as e2e4 or e7e8q
+    public static String toString(int move) {
+        if (move == NONE) {
+            return "0000";
+        }
+        String text = squareName(from(move)) + squareName(to(move));
+        if (isPromotion(move)) {
+            text += "nbrq".charAt(promotionType(move) - VirtualBoard.KNIGHT);
+        }
+        return text;
+    }
+
+    // The legal move of position written in coordinate notation, or NONE when there is no such move
+    public static int parse(VirtualBoard position, String text) {
+        int[] moves = new int[VirtualBoard.MAX_MOVES];
+        int count = position.generateLegalMoves(moves, 0);
+        for (int i = 0; i < count; i++) {
+            if (toString(moves[i]).equalsIgnoreCase(text)) {
+                return moves[i];
+            }
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,46 @@
+package com.pfa.engine;
+
+// Cache of pawn structure evaluations, keyed by VirtualBoard's pawn-only Zobrist key. Pawns rarely move
+// during a search, so almost every lookup hits and the pawn terms cost one array access per leaf.
+// Entries live in parallel primitive arrays, one per bucket, and a new entry always replaces the old one.
+// Each Evaluator owns a table, so there is no sharing between search threads.
+public class PawnHashTable {
+    private final long[] keys;
+    // Pawn structure score from white's point of view
+    private final int[] scores;
+    // Passed pawns of both colors
+    private final long[] passedPawns;
+    private final int mask;
+
+    // entries is rounded down to a power of two
+    public PawnHashTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        keys = new long[size];
+        scores = new int[size];
+        passedPawns = new long[size];
+        mask = size - 1;
+        // Empty slots hold key 0 with no passed pawns and score 0, which is exactly the entry for no pawns
+    }
+
+    public int slot(long pawnKey) {
+        return (int) pawnKey & mask;
+    }
+
+    public boolean matches(int slot, long pawnKey) {
+        return keys[slot] == pawnKey;
+    }
+
+    public void store(int slot, long pawnKey, int score, long passed) {
+        keys[slot] = pawnKey;
+        scores[slot] = score;
+        passedPawns[slot] = passed;
+    }
+
+    public int getScore(int slot) {
+        return scores[slot];
+    }
+
+    public long getPassedPawns(int slot) {
+        return passedPawns[slot];
+    }
+}
@@ -0,0 +1,114 @@
+package com.pfa.engine;
+
+import java.util.Arrays;
+
+// Move generation correctness check: counts the leaf nodes of the legal move tree to a fixed depth.
+// Usage: java com.pfa.engine.Perft                 runs the reference positions
+//        java com.pfa.engine.Perft <depth> [fen]   prints the divide (nodes per root move) for one position
+public class Perft {
+    // Standard positions with their published node counts, indexed by depth - 1
+    public static final String[] REFERENCE_FENS = {
+            VirtualBoard.START_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10"
+    };
+
+    public static final long[][] REFERENCE_COUNTS = {
+            { 20, 400, 8902, 197281, 4865609 },
+            { 48, 2039, 97862, 4085603 },
+            { 14, 191, 2812, 43238, 674624 },
+            { 6, 264, 9467, 422333 },
+            { 44, 1486, 62379, 2103487 },
+            { 46, 2079, 89890, 3894594 }
+    };
+
+    private static final int MAX_DEPTH = 32;
+
+    private final VirtualBoard position;
+    private final int[][] moveStack = new int[MAX_DEPTH][VirtualBoard.MAX_MOVES];
+
+    public Perft(VirtualBoard position) {
+        this.position = position;
+    }
+
+    public long count(int depth) {
+        return count(depth, 0);
+    }
+
+    private long count(int depth, int ply) {
+        int[] moves = moveStack[ply];
+        int moveCount = position.generateLegalMoves(moves, 0);
+        if (depth <= 1) {
+            return depth == 1 ? moveCount : 1;
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < moveCount; i++) {
+            position.makeMove(moves[i]);
+            nodes += count(depth - 1, ply + 1);
+            position.undoMove();
+        }
+        return nodes;
+    }
+
+    // Prints the node count below each root move, then the total
+    public long divide(int depth) {
+        int[] moves = moveStack[0];
+        int moveCount = position.generateLegalMoves(moves, 0);
+        long total = 0;
+        for (int i = 0; i < moveCount; i++) {
+            position.makeMove(moves[i]);
+            long nodes = depth > 1 ? count(depth - 1, 1) : 1;
+            position.undoMove();
+            System.out.println(PackedMove.toString(moves[i]) + ": " + nodes);
+            total += nodes;
+        }
+        System.out.println();
+        System.out.println("Moves: " + moveCount);
+        System.out.println("Nodes: " + total);
+        return total;
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            int depth = Integer.parseInt(args[0]);
+            String fen = args.length > 1 ? String.join(" ", Arrays.copyOfRange(args, 1, args.length))
+                    : VirtualBoard.START_FEN;
+            long start = System.nanoTime();
+            long nodes = new Perft(VirtualBoard.fromFen(fen)).divide(depth);
+            printSpeed(nodes, System.nanoTime() - start);
+            return;
+        }
+
+        boolean allPassed = true;
+        for (int i = 0; i < REFERENCE_FENS.length; i++) {
+            System.out.println(REFERENCE_FENS[i]);
+            Perft perft = new Perft(VirtualBoard.fromFen(REFERENCE_FENS[i]));
+            for (int depth = 1; depth <= REFERENCE_COUNTS[i].length; depth++) {
+                long start = System.nanoTime();
+                long nodes = perft.count(depth);
+                long elapsed = System.nanoTime() - start;
+                long expected = REFERENCE_COUNTS[i][depth - 1];
+                boolean passed = nodes == expected;
+                allPassed &= passed;
+                System.out.printf("  depth %d: %d %s (expected %d)%n", depth, nodes, passed ? "OK" : "FAIL",
+                        expected);
+                if (depth == REFERENCE_COUNTS[i].length) {
+                    printSpeed(nodes, elapsed);
+                }
+            }
+        }
+        System.out.println(allPassed ? "All perft counts match" : "Perft FAILED");
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+
+    private static void printSpeed(long nodes, long elapsedNanos) {
+        long ms = Math.max(1, elapsedNanos / 1000000);
+        System.out.println("  " + ms + " ms, " + (nodes * 1000 / ms) + " nodes/s");
+    }
+}
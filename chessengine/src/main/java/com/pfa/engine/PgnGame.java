@@ -0,0 +1,99 @@
+package com.pfa.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One game of a PGN file: its tag pairs in file order, the moves in PackedMove form played from the start
+// position, and the result. Games are read by PgnReader and written by PgnWriter.
+public final class PgnGame {
+    public static final String WHITE_WINS = "1-0";
+    public static final String BLACK_WINS = "0-1";
+    public static final String DRAW = "1/2-1/2";
+    public static final String UNFINISHED = "*";
+
+    private final Map<String, String> tags;
+    private final int[] moves;
+    private final String result;
+    // Why the movetext could not be read to the end, or null; moves then holds the moves before the problem
+    private final String error;
+
+    public PgnGame(Map<String, String> tags, int[] moves, String result) {
+        this(tags, moves, result, null);
+    }
+
+    PgnGame(Map<String, String> tags, int[] moves, String result, String error) {
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+        this.moves = moves.clone();
+        this.result = result;
+        this.error = error;
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    // Value of a tag pair such as White or Date, or null when the game does not have it
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public String getStartFen() {
+        String fen = tags.get("FEN");
+        return fen != null ? fen : VirtualBoard.START_FEN;
+    }
+
+    // Position the moves are played from; the FEN tag when there is one
+    public VirtualBoard getStartPosition() {
+        return VirtualBoard.fromFen(getStartFen());
+    }
+
+    public int[] getMoves() {
+        return moves.clone();
+    }
+
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    public int getMove(int ply) {
+        return moves[ply];
+    }
+
+    // 1-0, 0-1, 1/2-1/2 or *
+    public String getResult() {
+        return result;
+    }
+
+    public boolean hasError() {
+        return error != null;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return tags.getOrDefault("White", "?") + " - " + tags.getOrDefault("Black", "?") + " " + result + " ("
+                + moves.length + " plies" + (error != null ? ", " + error : "") + ")";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof PgnGame)) {
+            return false;
+        }
+        PgnGame that = (PgnGame) other;
+        return tags.equals(that.tags) && Arrays.equals(moves, that.moves) && result.equals(that.result);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(moves) * 31 + tags.hashCode();
+    }
+}
@@ -0,0 +1,389 @@
+package com.pfa.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+// Streaming PGN reader: reads the file through a fixed buffer and decodes each game's SAN into PackedMove form
+// while it goes, so memory stays bounded by the longest line whatever the size of the file. Comments,
+// variations, NAGs and escape lines are skipped.
+// A game starts at a tag pair line that follows a line that is not one. That rule only needs the line before,
+// which lets readParallel cut a file into byte ranges and parse them at the same time: each range reads the
+// games that start inside it, finishing the last one past its end.
+// Usage: java com.pfa.engine.PgnReader <file> [threads]
+public final class PgnReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // readParallel gives every thread several ranges so one slow range does not hold up the others
+    private static final int RANGES_PER_THREAD = 4;
+    private static final long MIN_RANGE_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    // Games starting at or after end belong to the next range
+    private final long end;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // File offset of the next byte read into buffer, and of the start of the line in line
+    private long readOffset;
+    private long lineOffset;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean previousWasTag;
+    private boolean finished;
+
+    // Game being read; inGame is false until the first game of the range starts
+    private boolean inGame;
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private VirtualBoard board;
+    private int[] moves = new int[256];
+    private int moveCount;
+    // Legal moves of board, generated by San.parse for each move read
+    private final int[] legalMoves = new int[VirtualBoard.MAX_MOVES];
+    private String result;
+    private String error;
+    private boolean inComment;
+    private int variationDepth;
+
+    private PgnReader(FileChannel channel, boolean ownsChannel, long start, long end) throws IOException {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.end = end;
+        readOffset = start == 0 ? 0 : nextLineStart(channel, start);
+        previousWasTag = readOffset > 0 && isTagLine(channel, lineStartOf(channel, readOffset - 1));
+        buffer.limit(0);
+    }
+
+    public static PgnReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return new PgnReader(channel, true, 0, channel.size());
+    }
+
+    // Reads every game of file on threads threads and hands it to consumer, which is called from all of them
+    // at once and in no particular order. Returns the number of games read.
+    public static long readParallel(Path file, int threads, Consumer<PgnGame> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long rangeSize = Math.max(MIN_RANGE_SIZE, size / ((long) threads * RANGES_PER_THREAD) + 1);
+
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+            List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+            for (long start = 0; start < size; start += rangeSize) {
+                long rangeStart = start;
+                long rangeEnd = Math.min(size, start + rangeSize);
+                tasks.add(pool.submit(() -> {
+                    long games = 0;
+                    // Reads are positional, so the ranges can share the channel
+                    try (PgnReader reader = new PgnReader(channel, false, rangeStart, rangeEnd)) {
+                        PgnGame game;
+                        while ((game = reader.next()) != null) {
+                            consumer.accept(game);
+                            games++;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return games;
+                }));
+            }
+
+            long games = 0;
+            try {
+                for (ForkJoinTask<Long> task : tasks) {
+                    games += task.join();
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdownNow();
+            }
+            return games;
+        }
+    }
+
+    // Reads a PGN file and prints the number of games, moves and errors and how fast they were read
+    public static void main(String[] args) throws IOException {
+        Path file = Path.of(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long[] totals = new long[2];
+        long start = System.nanoTime();
+        long games = readParallel(file, threads, game -> {
+            synchronized (totals) {
+                totals[0] += game.getMoveCount();
+                totals[1] += game.hasError() ? 1 : 0;
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, %d moves, %d with errors in %.2f s on %d threads: %.0f games per minute%n",
+                games, totals[0], totals[1], seconds, threads, games * 60 / seconds);
+    }
+
+    // The next game, or null when there are no more
+    public PgnGame next() throws IOException {
+        while (!finished) {
+            if (!readLine()) {
+                finished = true;
+                return inGame ? finishGame() : null;
+            }
+
+            boolean tag = lineLength > 1 && line[0] == '[' && Character.isLetter(line[1]);
+            boolean gameStart = tag && !previousWasTag;
+            previousWasTag = tag;
+            if (gameStart) {
+                if (lineOffset >= end) {
+                    finished = true;
+                    return inGame ? finishGame() : null;
+                }
+                PgnGame game = inGame ? finishGame() : null;
+                startGame();
+                readTag();
+                if (game != null) {
+                    return game;
+                }
+            } else if (!inGame) {
+                // The end of a game that started in the previous range, or text before the first game
+                continue;
+            } else if (tag) {
+                readTag();
+            } else {
+                readMovetext();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+
+    private void startGame() {
+        inGame = true;
+        tags.clear();
+        board = VirtualBoard.startPosition();
+        moveCount = 0;
+        result = null;
+        error = null;
+        inComment = false;
+        variationDepth = 0;
+    }
+
+    private PgnGame finishGame() {
+        inGame = false;
+        if (result == null) {
+            result = tags.getOrDefault("Result", PgnGame.UNFINISHED);
+        }
+        return new PgnGame(tags, Arrays.copyOf(moves, moveCount), result, error);
+    }
+
+    // [Name "value"], with \" and \\ escapes in the value
+    private void readTag() {
+        int nameEnd = 1;
+        while (nameEnd < lineLength && line[nameEnd] != ' ' && line[nameEnd] != '"' && line[nameEnd] != ']') {
+            nameEnd++;
+        }
+        String name = new String(line, 1, nameEnd - 1, StandardCharsets.US_ASCII);
+
+        int quote = nameEnd;
+        while (quote < lineLength && line[quote] != '"') {
+            quote++;
+        }
+        byte[] value = new byte[lineLength];
+        int valueLength = 0;
+        for (int i = quote + 1; i < lineLength && line[i] != '"'; i++) {
+            if (line[i] == '\\' && i + 1 < lineLength) {
+                i++;
+            }
+            value[valueLength++] = line[i];
+        }
+        String text = new String(value, 0, valueLength, StandardCharsets.UTF_8);
+        tags.put(name, text);
+
+        if (name.equals("FEN") && moveCount == 0) {
+            try {
+                board = VirtualBoard.fromFen(text);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                error = "invalid FEN " + text;
+            }
+        }
+    }
+
+    // Plays the moves of one line of movetext on board
+    private void readMovetext() {
+        if (lineLength > 0 && line[0] == '%') {
+            return;
+        }
+        int i = 0;
+        while (i < lineLength) {
+            byte c = line[i];
+            if (inComment) {
+                inComment = c != '}';
+                i++;
+            } else if (c == '{') {
+                inComment = true;
+                i++;
+            } else if (c == ';') {
+                return;
+            } else if (c == '(') {
+                variationDepth++;
+                i++;
+            } else if (c == ')') {
+                variationDepth = Math.max(0, variationDepth - 1);
+                i++;
+            } else if (c <= ' ') {
+                i++;
+            } else {
+                int tokenEnd = i;
+                while (tokenEnd < lineLength && !isDelimiter(line[tokenEnd])) {
+                    tokenEnd++;
+                }
+                if (variationDepth == 0) {
+                    readToken(i, tokenEnd);
+                }
+                i = tokenEnd;
+            }
+        }
+    }
+
+    private static boolean isDelimiter(byte c) {
+        return c <= ' ' || c == '{' || c == '}' || c == '(' || c == ')' || c == ';';
+    }
+
+    // A move number, move, NAG or game termination marker in line[start..end)
+    private void readToken(int start, int end) {
+        byte first = line[start];
+        if (first == '$' || isToken(start, end, "e.p.")) {
+            return;
+        }
+        if (first == '*' || (first >= '0' && first <= '9' && isResult(start, end))) {
+            result = new String(line, start, end - start, StandardCharsets.US_ASCII);
+            return;
+        }
+        if (first >= '1' && first <= '9') {
+            // A move number such as 12. or 12..., maybe with the move written straight after it
+            while (start < end && ((line[start] >= '0' && line[start] <= '9') || line[start] == '.')) {
+                start++;
+            }
+            if (start == end) {
+                return;
+            }
+        }
+        if (error != null) {
+            return;
+        }
+
+        int move = San.parse(board, line, start, end, legalMoves);
+        if (move == PackedMove.NONE) {
+            String san = new String(line, start, end - start, StandardCharsets.US_ASCII);
+            error = "illegal move " + san + " at ply " + (moveCount + 1);
+            return;
+        }
+        board.makeMove(move);
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moveCount * 2);
+        }
+        moves[moveCount++] = move;
+    }
+
+    private boolean isResult(int start, int end) {
+        return isToken(start, end, PgnGame.WHITE_WINS) || isToken(start, end, PgnGame.BLACK_WINS)
+                || isToken(start, end, PgnGame.DRAW);
+    }
+
+    private boolean isToken(int start, int end, String token) {
+        if (end - start != token.length()) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (line[start + i] != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reads the next line into line without its line break; false at the end of the file
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        lineOffset = readOffset - buffer.remaining();
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer, readOffset);
+                buffer.flip();
+                if (read <= 0) {
+                    return lineLength > 0;
+                }
+                readOffset += read;
+            }
+            byte c = buffer.get();
+            if (c == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return true;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, lineLength * 2);
+            }
+            line[lineLength++] = c;
+        }
+    }
+
+    // The first line start at or after pos
+    private static long nextLineStart(FileChannel channel, long pos) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        long offset = pos - 1;
+        while (true) {
+            block.clear();
+            int read = channel.read(block, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    // Start of the line holding the byte at pos
+    private static long lineStartOf(FileChannel channel, long pos) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        long blockEnd = pos;
+        while (blockEnd > 0) {
+            long blockStart = Math.max(0, blockEnd - block.capacity());
+            block.clear();
+            block.limit((int) (blockEnd - blockStart));
+            channel.read(block, blockStart);
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return 0;
+    }
+
+    private static boolean isTagLine(FileChannel channel, long pos) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(2);
+        channel.read(start, pos);
+        return start.position() == 2 && start.get(0) == '[' && Character.isLetter(start.get(1));
+    }
+}
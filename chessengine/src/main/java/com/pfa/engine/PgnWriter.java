@@ -0,0 +1,114 @@
+package com.pfa.engine;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+// Writes games in export-format PGN: the seven tag roster first, the other tags after it, then the moves in SAN
+// wrapped at 80 columns, each game followed by a blank line
+public final class PgnWriter implements Closeable {
+    private static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+    private static final String[] ROSTER_DEFAULTS = {"?", "?", "????.??.??", "?", "?", "?", "*"};
+    private static final int LINE_LENGTH = 80;
+
+    private final Writer out;
+
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+
+    // Appends to file, creating it when it does not exist yet
+    public static PgnWriter append(Path file) throws IOException {
+        BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new PgnWriter(out);
+    }
+
+    public void write(PgnGame game) throws IOException {
+        out.write(toPgn(game));
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // The game as PGN text, ending with a blank line
+    public static String toPgn(PgnGame game) {
+        StringBuilder pgn = new StringBuilder(64 * SEVEN_TAG_ROSTER.length + 8 * game.getMoveCount());
+        Map<String, String> tags = game.getTags();
+        for (int i = 0; i < SEVEN_TAG_ROSTER.length; i++) {
+            String value = SEVEN_TAG_ROSTER[i].equals("Result") ? game.getResult()
+                    : tags.getOrDefault(SEVEN_TAG_ROSTER[i], ROSTER_DEFAULTS[i]);
+            appendTag(pgn, SEVEN_TAG_ROSTER[i], value);
+        }
+        if (tags.containsKey("FEN") && !tags.containsKey("SetUp")) {
+            appendTag(pgn, "SetUp", "1");
+        }
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!isRosterTag(tag.getKey())) {
+                appendTag(pgn, tag.getKey(), tag.getValue());
+            }
+        }
+        pgn.append('\n');
+
+        VirtualBoard position = game.getStartPosition();
+        int lineStart = pgn.length();
+        int moveNumber = position.getFullmoveNumber();
+        for (int ply = 0; ply < game.getMoveCount(); ply++) {
+            int move = game.getMove(ply);
+            String token = San.toSan(position, move);
+            if (position.isWhiteToMove()) {
+                token = moveNumber + ". " + token;
+            } else if (ply == 0) {
+                token = moveNumber + "... " + token;
+            }
+            lineStart = appendToken(pgn, token, lineStart);
+            if (!position.isWhiteToMove()) {
+                moveNumber++;
+            }
+            position.makeMove(move);
+        }
+        appendToken(pgn, game.getResult(), lineStart);
+        return pgn.append("\n\n").toString();
+    }
+
+    // Adds token after a space, or on a new line when it would pass the line length; returns where the current
+    // line starts
+    private static int appendToken(StringBuilder pgn, String token, int lineStart) {
+        if (pgn.length() > lineStart) {
+            if (pgn.length() - lineStart + 1 + token.length() > LINE_LENGTH - 1) {
+                pgn.append('\n');
+                lineStart = pgn.length();
+            } else {
+                pgn.append(' ');
+            }
+        }
+        pgn.append(token);
+        return lineStart;
+    }
+
+    private static void appendTag(StringBuilder pgn, String name, String value) {
+        pgn.append('[').append(name).append(" \"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"]\n");
+    }
+
+    private static boolean isRosterTag(String name) {
+        for (String rosterTag : SEVEN_TAG_ROSTER) {
+            if (rosterTag.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
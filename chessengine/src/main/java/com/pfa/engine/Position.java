@@ -0,0 +1,111 @@
+package com.pfa.engine;
+
+import java.util.Arrays;
+
+// Immutable position: a VirtualBoard that is never changed once built, so it can be shared between threads
+// and kept as a value. Playing a move returns a new Position; searching or anything else that makes moves
+// works on a mutable copy from toVirtualBoard().
+public final class Position {
+    private final VirtualBoard board;
+
+    private Position(VirtualBoard board) {
+        this.board = board;
+    }
+
+    public static Position startPosition() {
+        return new Position(VirtualBoard.startPosition());
+    }
+
+    public static Position fromFen(String fen) {
+        return new Position(VirtualBoard.fromFen(fen));
+    }
+
+    // Snapshot of the current state of a mutable position; later moves on it do not affect the snapshot
+    public static Position of(VirtualBoard position) {
+        return new Position(new VirtualBoard(position));
+    }
+
+    public String toFen() {
+        return board.toFen();
+    }
+
+    // Independent mutable copy, without undo history
+    public VirtualBoard toVirtualBoard() {
+        return new VirtualBoard(board);
+    }
+
+    // The position after a legal move in PackedMove form
+    public Position play(int move) {
+        VirtualBoard next = new VirtualBoard(board);
+        next.makeMove(move);
+        return new Position(next);
+    }
+
+    // Legal moves for the side to move, in PackedMove form
+    public int[] legalMoves() {
+        int[] moves = new int[VirtualBoard.MAX_MOVES];
+        int count = new VirtualBoard(board).generateLegalMoves(moves, 0);
+        return Arrays.copyOf(moves, count);
+    }
+
+    public boolean isInCheck() {
+        return board.isInCheck(board.isWhiteToMove());
+    }
+
+    public boolean isCheckmate() {
+        return new VirtualBoard(board).isCheckmate();
+    }
+
+    public boolean isStalemate() {
+        return new VirtualBoard(board).isStalemate();
+    }
+
+    public int getPieceAt(int sq) {
+        return board.getPieceAt(sq);
+    }
+
+    public boolean isWhiteToMove() {
+        return board.isWhiteToMove();
+    }
+
+    public int getCastlingRights() {
+        return board.getCastlingRights();
+    }
+
+    public int getEnPassantSquare() {
+        return board.getEnPassantSquare();
+    }
+
+    public long getZobristKey() {
+        return board.getZobristKey();
+    }
+
+    // Positions are equal when pieces, side to move, castling rights and en passant square all match
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Position)) {
+            return false;
+        }
+        Position that = (Position) other;
+        if (board.getZobristKey() != that.board.getZobristKey()
+                || board.isWhiteToMove() != that.board.isWhiteToMove()
+                || board.getCastlingRights() != that.board.getCastlingRights()
+                || board.getEnPassantSquare() != that.board.getEnPassantSquare()) {
+            return false;
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            if (board.getPieceAt(sq) != that.board.getPieceAt(sq)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(board.getZobristKey());
+    }
+}
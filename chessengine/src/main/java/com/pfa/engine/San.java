@@ -0,0 +1,176 @@
+package com.pfa.engine;
+
+import java.nio.charset.StandardCharsets;
+
+// Standard Algebraic Notation, as used by PGN and EPD: Nf3, exd5, O-O, e8=Q+, Rad1#
+public final class San {
+    private static final String PIECE_LETTERS = "PNBRQK";
+
+    private San() {
+    }
+
+    // SAN of a legal move in position, with + or # when it gives check or mate
+    public static String toSan(VirtualBoard position, int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int type = VirtualBoard.pieceType(PackedMove.piece(move));
+        StringBuilder san = new StringBuilder();
+
+        if (PackedMove.flags(move) == PackedMove.CASTLE) {
+            san.append(to > from ? "O-O" : "O-O-O");
+        } else if (type == VirtualBoard.PAWN) {
+            if (PackedMove.isCapture(move)) {
+                san.append((char) ('a' + (from & 7))).append('x');
+            }
+            san.append(PackedMove.squareName(to));
+            if (PackedMove.isPromotion(move)) {
+                san.append('=').append(PIECE_LETTERS.charAt(PackedMove.promotionType(move)));
+            }
+        } else {
+            san.append(PIECE_LETTERS.charAt(type));
+            // Other pieces of the same kind that can also reach the destination decide how much of the
+            // origin square has to be given
+            int[] moves = new int[VirtualBoard.MAX_MOVES];
+            int count = position.generateLegalMoves(moves, 0);
+            boolean ambiguous = false;
+            boolean sameFile = false;
+            boolean sameRank = false;
+            for (int i = 0; i < count; i++) {
+                int other = moves[i];
+                if (other != move && PackedMove.to(other) == to && PackedMove.piece(other) == PackedMove.piece(move)) {
+                    ambiguous = true;
+                    sameFile |= (PackedMove.from(other) & 7) == (from & 7);
+                    sameRank |= (PackedMove.from(other) >> 3) == (from >> 3);
+                }
+            }
+            if (ambiguous) {
+                String origin = PackedMove.squareName(from);
+                san.append(!sameFile ? origin.substring(0, 1) : !sameRank ? origin.substring(1) : origin);
+            }
+            if (PackedMove.isCapture(move)) {
+                san.append('x');
+            }
+            san.append(PackedMove.squareName(to));
+        }
+
+        position.makeMove(move);
+        if (position.isInCheck(position.isWhiteToMove())) {
+            san.append(position.isCheckmate() ? '#' : '+');
+        }
+        position.undoMove();
+        return san.toString();
+    }
+
+    // The legal move of position written in SAN, or PackedMove.NONE when there is none or more than one.
+    // Check marks, annotations such as ! or ?, a promotion without = and 0-0 for castling are accepted.
+    public static int parse(VirtualBoard position, String text) {
+        byte[] san = text.getBytes(StandardCharsets.UTF_8);
+        return parse(position, san, 0, san.length, new int[VirtualBoard.MAX_MOVES]);
+    }
+
+    // As above for the SAN in text[start..end), generating the legal moves into moves, which must hold
+    // VirtualBoard.MAX_MOVES. Read by hand rather than with a regular expression, and allocates nothing, as
+    // PgnReader calls it straight on its line buffer for every move of every game.
+    public static int parse(VirtualBoard position, byte[] text, int start, int end, int[] moves) {
+        while (start < end && text[start] <= ' ' && text[start] >= 0) {
+            start++;
+        }
+        while (end > start && ((text[end - 1] <= ' ' && text[end - 1] >= 0) || isSuffix(text[end - 1]))) {
+            end--;
+        }
+        int count = position.generateLegalMoves(moves, 0);
+
+        if (startsWithCastling(text, start, end)) {
+            boolean kingside;
+            if (end - start == 3) {
+                kingside = true;
+            } else if (end - start == 5 && text[start + 3] == '-' && text[start + 4] == text[start]) {
+                kingside = false;
+            } else {
+                return PackedMove.NONE;
+            }
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                if (PackedMove.flags(move) == PackedMove.CASTLE && (PackedMove.to(move) > PackedMove.from(move))
+                        == kingside) {
+                    return move;
+                }
+            }
+            return PackedMove.NONE;
+        }
+
+        // Promotion piece, then destination square, from the end
+        int promotion = -1;
+        if (end > start && isPromotionLetter(text[end - 1])) {
+            promotion = PIECE_LETTERS.indexOf(text[--end]);
+            if (end > start && text[end - 1] == '=') {
+                end--;
+            }
+        }
+        if (end - start < 2 || !isFile(text[end - 2]) || !isRank(text[end - 1])) {
+            return PackedMove.NONE;
+        }
+        int to = ('8' - text[end - 1]) * 8 + (text[end - 2] - 'a');
+        end -= 2;
+
+        // Piece letter, origin file and rank and capture mark, from the start
+        int index = start;
+        int type = VirtualBoard.PAWN;
+        if (index < end && (isPromotionLetter(text[index]) || text[index] == 'K')) {
+            type = PIECE_LETTERS.indexOf(text[index++]);
+        }
+        int fromFile = -1;
+        if (index < end && isFile(text[index])) {
+            fromFile = text[index++] - 'a';
+        }
+        int fromRow = -1;
+        if (index < end && isRank(text[index])) {
+            fromRow = '8' - text[index++];
+        }
+        if (index < end && text[index] == 'x') {
+            index++;
+        }
+        if (index != end) {
+            return PackedMove.NONE;
+        }
+
+        int found = PackedMove.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = PackedMove.from(move);
+            if (PackedMove.to(move) != to || VirtualBoard.pieceType(PackedMove.piece(move)) != type
+                    || PackedMove.flags(move) == PackedMove.CASTLE
+                    || (fromFile >= 0 && (from & 7) != fromFile) || (fromRow >= 0 && (from >> 3) != fromRow)
+                    || (PackedMove.isPromotion(move) ? PackedMove.promotionType(move) : -1) != promotion) {
+                continue;
+            }
+            if (found != PackedMove.NONE) {
+                return PackedMove.NONE;
+            }
+            found = move;
+        }
+        return found;
+    }
+
+    // O-O or 0-0 at the start of text[start..end)
+    private static boolean startsWithCastling(byte[] text, int start, int end) {
+        byte castle = end - start >= 3 ? text[start] : 0;
+        return (castle == 'O' || castle == '0') && text[start + 1] == '-' && text[start + 2] == castle;
+    }
+
+    private static boolean isSuffix(byte c) {
+        return c == '+' || c == '#' || c == '!' || c == '?';
+    }
+
+    private static boolean isPromotionLetter(byte c) {
+        return c == 'N' || c == 'B' || c == 'R' || c == 'Q';
+    }
+
+    private static boolean isFile(byte c) {
+        return c >= 'a' && c <= 'h';
+    }
+
+    private static boolean isRank(byte c) {
+        return c >= '1' && c <= '8';
+    }
+}
@@ -0,0 +1,33 @@
+package com.pfa.engine;
+
+// Budget for one search: iterative deepening stops at whichever of depth, time or nodes runs out first
+public class SearchLimits {
+    public static final int MAX_DEPTH = 60;
+
+    public int depth = MAX_DEPTH;
+    public long timeMs = Long.MAX_VALUE;
+    public long nodes = Long.MAX_VALUE;
+
+    public static SearchLimits depth(int depth) {
+        SearchLimits limits = new SearchLimits();
+        limits.depth = Math.max(1, Math.min(depth, MAX_DEPTH));
+        return limits;
+    }
+
+    public static SearchLimits time(long timeMs) {
+        SearchLimits limits = new SearchLimits();
+        limits.timeMs = timeMs;
+        return limits;
+    }
+
+    public static SearchLimits nodes(long nodes) {
+        SearchLimits limits = new SearchLimits();
+        limits.nodes = nodes;
+        return limits;
+    }
+
+    // Time left for the next iteration to start; a new depth usually costs several times the previous one
+    public long softTimeMs() {
+        return timeMs == Long.MAX_VALUE ? Long.MAX_VALUE : timeMs / 2;
+    }
+}
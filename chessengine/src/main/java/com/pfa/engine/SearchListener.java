@@ -0,0 +1,9 @@
+package com.pfa.engine;
+
+// Told about each iteration the main search thread completes, on that thread; for progress output such as
+// UCI info lines
+public interface SearchListener {
+    // score is from the side to move's point of view; nodes counts all threads; pv[0..pvLength) is the
+    // principal variation in PackedMove form and is only valid during the call
+    void iterationCompleted(int depth, int score, long nodes, long elapsedMs, int[] pv, int pvLength);
+}
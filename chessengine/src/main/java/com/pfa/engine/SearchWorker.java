@@ -0,0 +1,600 @@
+package com.pfa.engine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One search thread: iterative deepening alpha-beta over its own copy of the position.
+// Several workers searching the same root share only the transposition table (Lazy SMP);
+// worker 0 is the main thread and enforces the time and node budget for all of them.
+public class SearchWorker implements Runnable {
+    public static final int INFINITY = 30000;
+    // Being mated at ply p scores -(MATE_SCORE - p), so shorter mates score higher
+    public static final int MATE_SCORE = 10000;
+
+    // Deepest ply the per-ply tables cover, quiescence search included
+    private static final int MAX_PLY = SearchLimits.MAX_DEPTH + 4;
+    // Scores beyond this are mates
+    public static final int MATE_BOUND = MATE_SCORE - MAX_PLY;
+
+    // Aspiration windows: first used at this depth, starting this far either side of the last score
+    private static final int ASPIRATION_DEPTH = 4;
+    private static final int ASPIRATION_WINDOW = 25;
+
+    // Returned by probeBitbases for positions the bitbases do not cover
+    private static final int NO_SCORE = -INFINITY - 1;
+
+    // Safety margin for delta pruning in quiescence search, on top of the captured piece's value
+    private static final int DELTA_MARGIN = 200;
+    // Near the horizon, captures losing more than this per ply of remaining depth are not searched
+    private static final int SEE_PRUNING_DEPTH = 3;
+    private static final int SEE_PRUNING_MARGIN = 100;
+    // Null-move pruning: minimum depth, and depth from which a fail high is verified by a reduced search
+    private static final int NULL_MOVE_DEPTH = 3;
+    private static final int NULL_VERIFY_DEPTH = 6;
+    // Late move reductions apply from this depth and move index on
+    private static final int LMR_DEPTH = 3;
+    private static final int LMR_MOVE_INDEX = 3;
+    // LMR_REDUCTIONS[depth][moveIndex]: plies taken off a late quiet move, growing with both
+    private static final int[][] LMR_REDUCTIONS = new int[MAX_PLY][VirtualBoard.MAX_MOVES];
+
+    static {
+        for (int depth = 1; depth < MAX_PLY; depth++) {
+            for (int index = 1; index < VirtualBoard.MAX_MOVES; index++) {
+                LMR_REDUCTIONS[depth][index] = (int) (0.75 + Math.log(depth) * Math.log(index) / 2.25);
+            }
+        }
+    }
+
+    private final Engine engine;
+    private final int id;
+    private final TranspositionTable transpositionTable;
+    private final Evaluator evaluator;
+    // Null when there are no bitbases
+    private final Bitbases bitbases;
+
+    // Preallocated per-ply move lists and ordering scores so the search allocates nothing
+    private final int[][] moveStack = new int[MAX_PLY][VirtualBoard.MAX_MOVES];
+    private final int[][] scoreStack = new int[MAX_PLY][VirtualBoard.MAX_MOVES];
+    // Move made at each ply of the current line, for countermoves
+    private final int[] playedMoves = new int[MAX_PLY];
+    private final MoveOrdering moveOrdering = new MoveOrdering(MAX_PLY);
+    // Scratch space for bitbase probes
+    private final int[] probePieces = new int[Bitbases.MAX_MEN];
+    private final int[] probeSquares = new int[Bitbases.MAX_MEN];
+
+    // Triangular principal variation table, and the PV of the last completed iteration
+    private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private final int[] previousPv = new int[MAX_PLY];
+    private int previousPvLength;
+    private boolean followingPv;
+
+    // Current search
+    private VirtualBoard position;
+    private int rootMoveCount;
+    private SearchLimits limits;
+    private long startTime;
+    private long nodes;
+    private boolean stopped;
+    private AtomicBoolean stopFlag;
+    // Set while searching on the opponent's time; the budget only applies once it is cleared
+    private AtomicBoolean ponderFlag;
+    // True when the root has more pieces than the bitbases cover: positions that reach them end the search
+    // there. Otherwise the root is covered itself and the bitbases only replace the static evaluation.
+    private boolean probeInSearch;
+
+    // Result of the last completed iteration
+    private int bestMove;
+    private int completedDepth;
+    private int lastScore;
+
+    public SearchWorker(Engine engine, int id, TranspositionTable transpositionTable,
+            Evaluator evaluator, Bitbases bitbases) {
+        this.engine = engine;
+        this.id = id;
+        this.transpositionTable = transpositionTable;
+        this.evaluator = evaluator;
+        this.bitbases = bitbases;
+    }
+
+    // Prepares a search of position over rootMoves[0..count), which must already be ordered.
+    // Helper workers get their own copy of the position; the main worker searches it in place.
+    public void setup(VirtualBoard position, int[] rootMoves, int count, SearchLimits limits, long startTime,
+            AtomicBoolean stopFlag, AtomicBoolean ponderFlag) {
+        this.position = id == 0 ? position : new VirtualBoard(position);
+        System.arraycopy(rootMoves, 0, moveStack[0], 0, count);
+        this.rootMoveCount = count;
+        this.limits = limits;
+        this.startTime = startTime;
+        this.stopFlag = stopFlag;
+        this.ponderFlag = ponderFlag;
+        probeInSearch = Long.bitCount(position.getOccupied()) > Bitbases.MAX_MEN;
+        nodes = 0;
+        stopped = false;
+        previousPvLength = 0;
+        moveOrdering.newSearch();
+        bestMove = rootMoves[0];
+        completedDepth = 0;
+        lastScore = 0;
+    }
+
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    public MoveOrdering getMoveOrdering() {
+        return moveOrdering;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    // Second move of the last completed principal variation: the reply expected from the opponent
+    public int getPonderMove() {
+        return previousPvLength >= 2 ? previousPv[1] : PackedMove.NONE;
+    }
+
+    // Searches depth 1, 2, 3... and keeps the best move of the last iteration that finished. An iteration
+    // interrupted by the budget is thrown away; a new one is only started while there is time for it.
+    // Odd helpers start one ply deeper so the threads spread over different depths.
+    @Override
+    public void run() {
+        for (int depth = 1 + (id & 1); depth <= limits.depth; depth++) {
+            int score = aspirationSearch(depth);
+            if (stopped) {
+                break;
+            }
+
+            bestMove = pvTable[0][0];
+            lastScore = score;
+            completedDepth = depth;
+            previousPvLength = pvLength[0];
+            System.arraycopy(pvTable[0], 0, previousPv, 0, previousPvLength);
+            if (id == 0) {
+                engine.iterationCompleted(depth, score, startTime, previousPv, previousPvLength);
+            }
+
+            // A mate within the searched depth is proven; deeper iterations cannot change it
+            if (Math.abs(score) >= MATE_BOUND && MATE_SCORE - Math.abs(score) <= depth) {
+                break;
+            }
+            if (id == 0 && !ponderFlag.get() && System.currentTimeMillis() - startTime >= limits.softTimeMs()) {
+                break;
+            }
+        }
+    }
+
+    // Searches the root with a narrow window around the previous iteration's score, widening it on the side
+    // that failed until the score falls inside; the first iterations and mate scores use a full window
+    private int aspirationSearch(int depth) {
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        int delta = ASPIRATION_WINDOW;
+        if (depth >= ASPIRATION_DEPTH && completedDepth > 0 && Math.abs(lastScore) < MATE_BOUND) {
+            alpha = lastScore - delta;
+            beta = lastScore + delta;
+        }
+
+        while (true) {
+            followingPv = previousPvLength > 0;
+            int score = searchRoot(depth, alpha, beta);
+            if (stopped) {
+                return 0;
+            }
+
+            if (score <= alpha) {
+                // Fail low: the move is worse than expected, also pull beta down towards the window
+                beta = (alpha + beta) / 2;
+                alpha = Math.max(score - delta, -INFINITY);
+            } else if (score >= beta) {
+                beta = Math.min(score + delta, INFINITY);
+            } else {
+                return score;
+            }
+            delta *= 2;
+        }
+    }
+
+    private int searchRoot(int depth, int alpha, int beta) {
+        int[] rootMoves = moveStack[0];
+
+        // The previous iteration's best move goes first; the rest keep their order
+        if (previousPvLength > 0) {
+            for (int i = 0; i < rootMoveCount; i++) {
+                if (rootMoves[i] == previousPv[0]) {
+                    System.arraycopy(rootMoves, 0, rootMoves, 1, i);
+                    rootMoves[0] = previousPv[0];
+                    break;
+                }
+            }
+        }
+
+        int alphaOrig = alpha;
+        int bestValue = -INFINITY;
+        pvLength[0] = 0;
+
+        for (int i = 0; i < rootMoveCount; i++) {
+            int move = rootMoves[i];
+            if (move != previousPv[0]) {
+                followingPv = false;
+            }
+
+            playedMoves[0] = move;
+            position.makeMove(move);
+            int value;
+            if (i == 0) {
+                value = -negamax(depth - 1, 1, -beta, -alpha, true);
+            } else {
+                // Principal variation search: prove the move is no better than the best so far with a null
+                // window, and only search it fully when that fails
+                value = -negamax(depth - 1, 1, -alpha - 1, -alpha, true);
+                if (value > alpha && !stopped) {
+                    value = -negamax(depth - 1, 1, -beta, -alpha, true);
+                }
+            }
+            position.undoMove();
+
+            if (stopped) {
+                return 0;
+            }
+
+            if (value > bestValue) {
+                bestValue = value;
+                alpha = Math.max(alpha, value);
+                updatePv(0, move);
+                if (value >= beta) {
+                    break; // Fail high: the aspiration window has to widen
+                }
+            }
+        }
+
+        int bound = bestValue <= alphaOrig ? TranspositionTable.BOUND_UPPER
+                : bestValue >= beta ? TranspositionTable.BOUND_LOWER
+                        : TranspositionTable.BOUND_EXACT;
+        transpositionTable.store(position.getZobristKey(), pvTable[0][0], bestValue, depth, bound);
+        return bestValue;
+    }
+
+    // Negamax principal variation search: scores are from the side to move's point of view. Nodes searched
+    // with a window wider than one point are PV nodes; all others only need to prove a bound.
+    // allowNull is false right after a null move and during null-move verification.
+    private int negamax(int depth, int ply, int alpha, int beta, boolean allowNull) {
+        nodes++;
+        checkLimits();
+        if (stopped) {
+            return 0;
+        }
+        pvLength[ply] = ply;
+
+        // A repeated position, or fifty moves without a capture or pawn move, is a draw whatever lies beyond.
+        // A mate given on the hundredth ply still wins, so the fifty-move rule waits for the side to move to
+        // have a legal move or not be in check.
+        if (position.isRepetition()
+                || (position.getHalfmoveClock() >= VirtualBoard.FIFTY_MOVE_PLIES && !position.isCheckmate())) {
+            followingPv = false;
+            return 0;
+        }
+
+        // Mate distance pruning: no line from here can beat a mate already found closer to the root
+        alpha = Math.max(alpha, -MATE_SCORE + ply);
+        beta = Math.min(beta, MATE_SCORE - ply - 1);
+        if (alpha >= beta) {
+            return alpha;
+        }
+        boolean pvNode = beta - alpha > 1;
+
+        // Reuse earlier results for this position, reached through any move order or by another thread
+        long key = position.getZobristKey();
+        long entry = transpositionTable.probe(key);
+        int ttMove = PackedMove.NONE;
+        if (entry != 0) {
+            ttMove = TranspositionTable.getMove(entry);
+            if (TranspositionTable.getDepth(entry) >= depth && !followingPv) {
+                int ttScore = scoreFromTable(TranspositionTable.getScore(entry), ply);
+                int bound = TranspositionTable.getBound(entry);
+                if (bound == TranspositionTable.BOUND_EXACT
+                        || (bound == TranspositionTable.BOUND_LOWER && ttScore >= beta)
+                        || (bound == TranspositionTable.BOUND_UPPER && ttScore <= alpha)) {
+                    return ttScore;
+                }
+            }
+        }
+
+        if (probeInSearch) {
+            int bitbaseScore = probeBitbases();
+            if (bitbaseScore != NO_SCORE) {
+                followingPv = false;
+                return bitbaseScore;
+            }
+        }
+
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            followingPv = false;
+            return quiescence(ply, alpha, beta);
+        }
+
+        boolean inCheck = position.isInCheck(position.isWhiteToMove());
+        int side = position.isWhiteToMove() ? VirtualBoard.WHITE : VirtualBoard.BLACK;
+
+        // Null-move pruning: if passing the turn still fails high, a real move almost certainly would too.
+        // Not in check, where passing is illegal, and not with only pawns left, where zugzwang is common.
+        if (allowNull && !pvNode && !inCheck && !followingPv && depth >= NULL_MOVE_DEPTH
+                && position.hasNonPawnMaterial(side) && evaluate() >= beta) {
+            int reduction = 2 + depth / 4;
+            playedMoves[ply] = PackedMove.NONE;
+            position.makeNullMove();
+            int value = -negamax(depth - 1 - reduction, ply + 1, -beta, -beta + 1, false);
+            position.undoNullMove();
+
+            if (stopped) {
+                return 0;
+            }
+            if (value >= beta) {
+                // Deep fail highs are verified by a reduced search without null moves, which catches zugzwang
+                if (depth < NULL_VERIFY_DEPTH
+                        || negamax(depth - reduction, ply, beta - 1, beta, false) >= beta) {
+                    // A null-move result is only a bound, never a proven mate
+                    return value >= MATE_BOUND ? beta : value;
+                }
+                if (stopped) {
+                    return 0;
+                }
+            }
+        }
+
+        int[] legalMoves = moveStack[ply];
+        int moveCount = position.generateLegalMoves(legalMoves, 0);
+
+        if (moveCount == 0) {
+            // Checkmate or stalemate
+            followingPv = false;
+            return inCheck ? -MATE_SCORE + ply : 0;
+        }
+
+        int pvMove = PackedMove.NONE;
+        if (followingPv && ply < previousPvLength) {
+            pvMove = previousPv[ply];
+        }
+        int[] scores = scoreStack[ply];
+        int previousMove = playedMoves[ply - 1];
+        moveOrdering.scoreMoves(position, legalMoves, moveCount, scores, ttMove, pvMove, ply, previousMove);
+
+        int alphaOrig = alpha;
+        int bestValue = -INFINITY;
+        int bestMove = PackedMove.NONE;
+
+        for (int i = 0; i < moveCount; i++) {
+            int move = MoveOrdering.pickMove(legalMoves, scores, i, moveCount);
+
+            // Skip captures that clearly lose material close to the horizon
+            if (i > 0 && !inCheck && depth <= SEE_PRUNING_DEPTH && MoveOrdering.isLosingCapture(scores[i])
+                    && position.see(move) < -SEE_PRUNING_MARGIN * depth) {
+                continue;
+            }
+
+            if (move != pvMove) {
+                followingPv = false;
+            }
+
+            playedMoves[ply] = move;
+            position.makeMove(move);
+
+            int value;
+            if (i == 0) {
+                value = -negamax(depth - 1, ply + 1, -beta, -alpha, true);
+            } else {
+                // Late move reductions: quiet moves ordered late are searched shallower first, unless they are
+                // killers or countermoves, escape or give check
+                int reduction = 0;
+                if (depth >= LMR_DEPTH && i >= LMR_MOVE_INDEX && !inCheck && MoveOrdering.isLateMove(scores[i])
+                        && !position.isInCheck(position.isWhiteToMove())) {
+                    reduction = LMR_REDUCTIONS[depth][i];
+                    if (pvNode) {
+                        reduction--;
+                    }
+                    reduction = Math.max(0, Math.min(reduction, depth - 2));
+                }
+
+                // Principal variation search: a null window proves the move is no better than alpha
+                value = -negamax(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha, true);
+                if (value > alpha && reduction > 0 && !stopped) {
+                    value = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha, true);
+                }
+                if (value > alpha && value < beta && !stopped) {
+                    value = -negamax(depth - 1, ply + 1, -beta, -alpha, true);
+                }
+            }
+            position.undoMove();
+
+            if (stopped) {
+                return 0;
+            }
+
+            if (value > bestValue) {
+                bestValue = value;
+                bestMove = move;
+                if (value > alpha) {
+                    alpha = value;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        if (!PackedMove.isCapture(move) && !PackedMove.isPromotion(move)) {
+                            moveOrdering.updateQuiet(move, ply, depth, previousMove, legalMoves, i);
+                        }
+                        break; // Beta cutoff
+                    }
+                }
+            }
+        }
+
+        int bound = bestValue <= alphaOrig ? TranspositionTable.BOUND_UPPER
+                : bestValue >= beta ? TranspositionTable.BOUND_LOWER
+                        : TranspositionTable.BOUND_EXACT;
+        transpositionTable.store(key, bestMove, scoreToTable(bestValue, ply), depth, bound);
+
+        return bestValue;
+    }
+
+    // Searches only captures and queen promotions until the position is quiet, so the static evaluation is
+    // never taken in the middle of an exchange. The side to move may stand pat on the static evaluation,
+    // except in check, where every evasion is searched.
+    private int quiescence(int ply, int alpha, int beta) {
+        nodes++;
+        checkLimits();
+        if (stopped) {
+            return 0;
+        }
+        pvLength[ply] = ply;
+
+        if (ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        int[] moves = moveStack[ply];
+        int moveCount;
+        int standPat = -INFINITY;
+        boolean inCheck = position.isInCheck(position.isWhiteToMove());
+
+        if (inCheck) {
+            moveCount = position.generateLegalMoves(moves, 0);
+            if (moveCount == 0) {
+                return -MATE_SCORE + ply;
+            }
+        } else {
+            standPat = evaluate();
+            if (standPat >= beta) {
+                return standPat;
+            }
+            // Delta pruning: not even winning a queen would bring the score up to alpha
+            if (standPat + Evaluator.QUEEN_VALUE + DELTA_MARGIN <= alpha) {
+                return standPat;
+            }
+            alpha = Math.max(alpha, standPat);
+            moveCount = position.generateCaptures(moves, 0);
+        }
+
+        int[] scores = scoreStack[ply];
+        moveOrdering.scoreMoves(position, moves, moveCount, scores, PackedMove.NONE, PackedMove.NONE, ply,
+                playedMoves[ply - 1]);
+
+        int bestValue = standPat;
+        for (int i = 0; i < moveCount; i++) {
+            int move = MoveOrdering.pickMove(moves, scores, i, moveCount);
+
+            if (!inCheck && MoveOrdering.isLosingCapture(scores[i])) {
+                continue; // Losing the exchange cannot help while standing pat is allowed
+            }
+
+            // Delta pruning per move: this capture cannot raise the score to alpha
+            if (!inCheck && !PackedMove.isPromotion(move)) {
+                int gain = Evaluator.PIECE_VALUES[VirtualBoard.pieceType(PackedMove.captured(move))];
+                if (standPat + gain + DELTA_MARGIN <= alpha) {
+                    continue;
+                }
+            }
+
+            playedMoves[ply] = move;
+            position.makeMove(move);
+            int value = -quiescence(ply + 1, -beta, -alpha);
+            position.undoMove();
+
+            if (stopped) {
+                return 0;
+            }
+
+            if (value > bestValue) {
+                bestValue = value;
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta) {
+                        break; // Beta cutoff
+                    }
+                }
+            }
+        }
+
+        return bestValue;
+    }
+
+    // Mate scores are stored relative to the stored position rather than the root, so an entry stays valid
+    // when the position is reached at another ply
+    private static int scoreToTable(int score, int ply) {
+        if (score >= MATE_BOUND) {
+            return score + ply;
+        }
+        if (score <= -MATE_BOUND) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= MATE_BOUND) {
+            return score - ply;
+        }
+        if (score <= -MATE_BOUND) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    private void updatePv(int ply, int move) {
+        pvTable[ply][ply] = move;
+        System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+        pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+    }
+
+    // Static evaluation, or the bitbase result when the root is already covered by the bitbases
+    private int evaluate() {
+        if (!probeInSearch) {
+            int bitbaseScore = probeBitbases();
+            if (bitbaseScore != NO_SCORE) {
+                return bitbaseScore;
+            }
+        }
+        return evaluator.evaluate(position);
+    }
+
+    // Bitbase result as a score for the side to move, or NO_SCORE when the position is not covered. Draws
+    // score 0; won positions score between Evaluator.KNOWN_WIN and the mate scores.
+    private int probeBitbases() {
+        if (bitbases == null || Long.bitCount(position.getOccupied()) > Bitbases.MAX_MEN) {
+            return NO_SCORE;
+        }
+        int side = position.isWhiteToMove() ? VirtualBoard.WHITE : VirtualBoard.BLACK;
+        switch (bitbases.probe(position, probePieces, probeSquares)) {
+            case Bitbases.WIN:
+                return Evaluator.knownWinScore(position, side);
+            case Bitbases.LOSS:
+                return -Evaluator.knownWinScore(position, side ^ 1);
+            case Bitbases.DRAW:
+                return 0;
+            default:
+                return NO_SCORE;
+        }
+    }
+
+    // Every worker stops as soon as a stop is requested. Unless pondering, the main worker also checks its own
+    // node count every node, and the clock and the node count of all workers every 1024 nodes.
+    private void checkLimits() {
+        if (stopFlag.get()) {
+            stopped = true;
+        } else if (id == 0 && !ponderFlag.get() && (nodes >= limits.nodes || ((nodes & 1023) == 0
+                && (System.currentTimeMillis() - startTime >= limits.timeMs
+                        || engine.getNodes() >= limits.nodes)))) {
+            stopped = true;
+            stopFlag.set(true);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.pfa.engine;
+
+// Sequential probability ratio test on match results, deciding between H0: the Elo difference is elo0 and
+// H1: it is elo1, with error rates alpha (accepting H1 when H0 holds) and beta (the other way round). Uses the
+// normal approximation of the score distribution that fishtest and cutechess use, so results are comparable.
+public class Sprt {
+    public static final int CONTINUE = 0;
+    public static final int ACCEPT_H0 = -1;
+    public static final int ACCEPT_H1 = 1;
+
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+
+    public Sprt(double elo0, double elo1, double alpha, double beta) {
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    public double getElo0() {
+        return elo0;
+    }
+
+    public double getElo1() {
+        return elo1;
+    }
+
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    // Log-likelihood ratio of H1 against H0 for wins, draws and losses of the first player; 0 until every
+    // outcome has occurred, as the variance estimate is meaningless before that
+    public double llr(long wins, long draws, long losses) {
+        if (wins == 0 || draws == 0 || losses == 0) {
+            return 0;
+        }
+        double games = wins + draws + losses;
+        double score = (wins + draws / 2.0) / games;
+        double variance = (wins + draws / 4.0) / games - score * score;
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        return (s1 - s0) * (2 * score - s0 - s1) / (2 * variance / games);
+    }
+
+    public int status(long wins, long draws, long losses) {
+        double llr = llr(wins, draws, losses);
+        return llr >= upperBound ? ACCEPT_H1 : llr <= lowerBound ? ACCEPT_H0 : CONTINUE;
+    }
+
+    // Expected score of a player elo points stronger, under the logistic model
+    public static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    // Elo difference implied by a score fraction strictly between 0 and 1
+    public static double elo(double score) {
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    // Elo difference and its 95% confidence margin for the first player, as { elo, margin }
+    public static double[] eloWithMargin(long wins, long draws, long losses) {
+        double games = wins + draws + losses;
+        if (games == 0) {
+            return new double[] { 0, 0 };
+        }
+        double score = (wins + draws / 2.0) / games;
+        double deviation = Math.sqrt(Math.max(0, (wins + draws / 4.0) / games - score * score) / games);
+        double low = clampScore(score - 1.96 * deviation, games);
+        double high = clampScore(score + 1.96 * deviation, games);
+        double elo = elo(clampScore(score, games));
+        return new double[] { elo, (elo(high) - elo(low)) / 2 };
+    }
+
+    // Keeps a score away from 0 and 1, where the Elo difference is infinite
+    private static double clampScore(double score, double games) {
+        double epsilon = 0.5 / games;
+        return Math.max(epsilon, Math.min(1 - epsilon, score));
+    }
+}
@@ -0,0 +1,350 @@
+package com.pfa.engine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Engine-versus-engine match for regression testing: plays games between players A and B on every core at
+// once, each opening twice with colors swapped, and stops as soon as a sequential probability ratio test
+// decides whether A is elo1 stronger than B or no better than elo0. Every game has its own VirtualBoard and
+// every thread its own pair of players, so games share nothing.
+// Usage: java com.pfa.engine.Tournament [-a spec] [-b spec] [-games n] [-concurrency n] [-nodes n | -movetime ms]
+//        [-openings file] [-hash mb] [-elo0 e] [-elo1 e] [-alpha a] [-beta b]
+// A spec is builtin, builtin-nomobility or uci:<command>, e.g. "uci:java -cp old.jar com.pfa.engine.Uci" to
+// play against another build. An openings file holds one FEN or EPD position per line.
+public class Tournament {
+    // Balanced openings from the start position, used when no openings file is given
+    private static final String[] DEFAULT_OPENINGS = {
+            "e2e4 e7e5 g1f3 b8c6 f1b5 a7a6",
+            "e2e4 e7e5 g1f3 b8c6 f1c4 f8c5",
+            "e2e4 c7c5 g1f3 d7d6 d2d4 c5d4 f3d4 g8f6",
+            "e2e4 e7e6 d2d4 d7d5 b1c3 g8f6",
+            "e2e4 c7c6 d2d4 d7d5 e4e5 c8f5",
+            "d2d4 d7d5 c2c4 e7e6 b1c3 g8f6",
+            "d2d4 g8f6 c2c4 g7g6 b1c3 f8g7 e2e4 d7d6",
+            "d2d4 g8f6 c2c4 e7e6 g1f3 b7b6",
+            "c2c4 e7e5 b1c3 g8f6 g2g3 d7d5",
+            "g1f3 d7d5 g2g3 g8f6 f1g2 c7c6"
+    };
+
+    // Games still running after this many plies are drawn
+    private static final int MAX_PLIES = 400;
+    // A progress line is printed after every this many games
+    private static final int REPORT_INTERVAL = 20;
+
+    // A starting position, and the moves that lead from it to where the game begins
+    private static final class Opening {
+        final String fen;
+        final int[] moves;
+
+        Opening(String fen, int[] moves) {
+            this.fen = fen;
+            this.moves = moves;
+        }
+    }
+
+    private final String specA;
+    private final String specB;
+    private final int maxGames;
+    private final int concurrency;
+    private final SearchLimits limits;
+    private final List<Opening> openings;
+    private final int hashMb;
+    private final Sprt sprt;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private volatile boolean finished;
+
+    // Results from A's point of view, and search totals per player (0 = A, 1 = B); guarded by this
+    private long wins;
+    private long draws;
+    private long losses;
+    private final long[] nodes = new long[2];
+    private final long[] searchNanos = new long[2];
+    // Outcome of the test when it stopped the match; games still running then are counted but cannot undo it
+    private int decision = Sprt.CONTINUE;
+
+    private Tournament(String specA, String specB, int maxGames, int concurrency, SearchLimits limits,
+            List<Opening> openings, int hashMb, Sprt sprt) {
+        this.specA = specA;
+        this.specB = specB;
+        this.maxGames = maxGames;
+        this.concurrency = concurrency;
+        this.limits = limits;
+        this.openings = openings;
+        this.hashMb = hashMb;
+        this.sprt = sprt;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String specA = "builtin";
+        String specB = "builtin";
+        int games = 1000;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        SearchLimits limits = SearchLimits.nodes(20000);
+        String openingsFile = null;
+        int hashMb = Engine.DEFAULT_HASH_MB;
+        double elo0 = 0;
+        double elo1 = 5;
+        double alpha = 0.05;
+        double beta = 0.05;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-a":
+                    specA = value;
+                    break;
+                case "-b":
+                    specB = value;
+                    break;
+                case "-games":
+                    games = Integer.parseInt(value);
+                    break;
+                case "-concurrency":
+                    concurrency = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "-nodes":
+                    limits = SearchLimits.nodes(Long.parseLong(value));
+                    break;
+                case "-movetime":
+                    limits = SearchLimits.time(Long.parseLong(value));
+                    break;
+                case "-openings":
+                    openingsFile = value;
+                    break;
+                case "-hash":
+                    hashMb = Integer.parseInt(value);
+                    break;
+                case "-elo0":
+                    elo0 = Double.parseDouble(value);
+                    break;
+                case "-elo1":
+                    elo1 = Double.parseDouble(value);
+                    break;
+                case "-alpha":
+                    alpha = Double.parseDouble(value);
+                    break;
+                case "-beta":
+                    beta = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<Opening> openings = openingsFile == null ? defaultOpenings() : readOpenings(openingsFile);
+        new Tournament(specA, specB, games, concurrency, limits, openings, hashMb,
+                new Sprt(elo0, elo1, alpha, beta)).run();
+    }
+
+    private static List<Opening> defaultOpenings() {
+        List<Opening> openings = new ArrayList<>();
+        for (String line : DEFAULT_OPENINGS) {
+            VirtualBoard position = VirtualBoard.startPosition();
+            String[] texts = line.split(" ");
+            int[] moves = new int[texts.length];
+            for (int i = 0; i < texts.length; i++) {
+                moves[i] = PackedMove.parse(position, texts[i]);
+                if (moves[i] == PackedMove.NONE) {
+                    throw new IllegalStateException("Illegal opening move " + texts[i] + " in " + line);
+                }
+                position.makeMove(moves[i]);
+            }
+            openings.add(new Opening(VirtualBoard.START_FEN, moves));
+        }
+        return openings;
+    }
+
+    // FEN or EPD lines; only the first four fields are used and the move counters start afresh
+    private static List<Opening> readOpenings(String file) throws IOException {
+        List<Opening> openings = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length < 4) {
+                continue;
+            }
+            String fen = String.join(" ", Arrays.copyOf(fields, 4)) + " 0 1";
+            VirtualBoard.fromFen(fen);
+            openings.add(new Opening(fen, new int[0]));
+        }
+        if (openings.isEmpty()) {
+            throw new IllegalArgumentException("No positions in " + file);
+        }
+        return openings;
+    }
+
+    public void run() throws InterruptedException {
+        System.out.printf("%s vs %s, up to %d games on %d threads, SPRT elo0=%.1f elo1=%.1f bounds [%.2f, %.2f]%n",
+                specA, specB, maxGames, concurrency, sprt.getElo0(), sprt.getElo1(), sprt.getLowerBound(),
+                sprt.getUpperBound());
+        long start = System.currentTimeMillis();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Thread thread = new Thread(this::playGames, "Match " + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        report();
+        synchronized (this) {
+            System.out.println(decision == Sprt.ACCEPT_H1 ? "H1 accepted: A is stronger"
+                    : decision == Sprt.ACCEPT_H0 ? "H0 accepted: A is not stronger" : "SPRT inconclusive");
+        }
+        System.out.println("Finished in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // One thread's share of the match: takes game numbers until the match is over
+    private void playGames() {
+        try (MatchPlayer a = createPlayer(specA); MatchPlayer b = createPlayer(specB)) {
+            int game;
+            while (!finished && (game = nextGame.getAndIncrement()) < maxGames) {
+                // Even games give A white, odd ones replay the same opening with colors swapped
+                boolean aIsWhite = (game & 1) == 0;
+                Opening opening = openings.get((game >> 1) % openings.size());
+                int result = playGame(opening, aIsWhite ? a : b, aIsWhite ? b : a, aIsWhite);
+                record(aIsWhite ? result : -result);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Match stopped: " + e);
+            finished = true;
+        }
+    }
+
+    private MatchPlayer createPlayer(String spec) {
+        if (spec.equals("builtin")) {
+            return new EnginePlayer(true, hashMb);
+        }
+        if (spec.equals("builtin-nomobility")) {
+            return new EnginePlayer(false, hashMb);
+        }
+        if (spec.startsWith("uci:")) {
+            return new UciPlayer(spec.substring(4), hashMb);
+        }
+        throw new IllegalArgumentException("Unknown player " + spec);
+    }
+
+    // Plays one game; returns 1 when white wins, -1 when black wins and 0 for a draw
+    private int playGame(Opening opening, MatchPlayer white, MatchPlayer black, boolean aIsWhite) {
+        white.newGame();
+        black.newGame();
+
+        VirtualBoard position = VirtualBoard.fromFen(opening.fen);
+        int[] moves = new int[opening.moves.length + MAX_PLIES];
+        int moveCount = 0;
+        for (int move : opening.moves) {
+            position.makeMove(move);
+            moves[moveCount++] = move;
+        }
+        // Keys of the positions since the last capture or pawn move, for repetitions and the fifty-move rule
+        long[] keys = new long[MAX_PLIES + 1];
+        int keyCount = 0;
+        keys[keyCount++] = position.getZobristKey();
+
+        int[] legalMoves = new int[VirtualBoard.MAX_MOVES];
+        for (int ply = 0; ply < MAX_PLIES; ply++) {
+            int legalCount = position.generateLegalMoves(legalMoves, 0);
+            if (legalCount == 0) {
+                return position.isInCheck(position.isWhiteToMove()) ? (position.isWhiteToMove() ? -1 : 1) : 0;
+            }
+            if (keyCount > 100 || isRepetition(keys, keyCount) || isInsufficientMaterial(position)) {
+                return 0;
+            }
+
+            boolean whiteToMove = position.isWhiteToMove();
+            MatchPlayer player = whiteToMove ? white : black;
+            long start = System.nanoTime();
+            int move = player.chooseMove(position, opening.fen, moves, moveCount, limits);
+            int playerIndex = whiteToMove == aIsWhite ? 0 : 1;
+            synchronized (this) {
+                searchNanos[playerIndex] += System.nanoTime() - start;
+                nodes[playerIndex] += player.getLastNodes();
+            }
+            if (!contains(legalMoves, legalCount, move)) {
+                // A player that cannot move loses
+                return whiteToMove ? -1 : 1;
+            }
+
+            position.makeMove(move);
+            moves[moveCount++] = move;
+            if (PackedMove.isCapture(move) || VirtualBoard.pieceType(PackedMove.piece(move)) == VirtualBoard.PAWN) {
+                keyCount = 0;
+            }
+            keys[keyCount++] = position.getZobristKey();
+        }
+        return 0;
+    }
+
+    // The last position occurred twice before, counting only positions with the same side to move
+    private static boolean isRepetition(long[] keys, int keyCount) {
+        long current = keys[keyCount - 1];
+        int seen = 0;
+        for (int i = keyCount - 3; i >= 0; i -= 2) {
+            if (keys[i] == current && ++seen == 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Only kings, plus at most one knight or bishop
+    private static boolean isInsufficientMaterial(VirtualBoard position) {
+        for (int color = VirtualBoard.WHITE; color <= VirtualBoard.BLACK; color++) {
+            if ((position.getPieceBitboard(VirtualBoard.makePiece(color, VirtualBoard.PAWN))
+                    | position.getPieceBitboard(VirtualBoard.makePiece(color, VirtualBoard.ROOK))
+                    | position.getPieceBitboard(VirtualBoard.makePiece(color, VirtualBoard.QUEEN))) != 0) {
+                return false;
+            }
+        }
+        return Long.bitCount(position.getOccupied()) <= 3;
+    }
+
+    private static boolean contains(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Adds a result from A's point of view and ends the match once the test decides
+    private synchronized void record(int result) {
+        if (result > 0) {
+            wins++;
+        } else if (result < 0) {
+            losses++;
+        } else {
+            draws++;
+        }
+        long games = wins + draws + losses;
+        if (games % REPORT_INTERVAL == 0) {
+            report();
+        }
+        if (decision == Sprt.CONTINUE) {
+            decision = sprt.status(wins, draws, losses);
+            finished |= decision != Sprt.CONTINUE;
+        }
+    }
+
+    private synchronized void report() {
+        long games = wins + draws + losses;
+        double[] elo = Sprt.eloWithMargin(wins, draws, losses);
+        System.out.printf("Games %d: +%d =%d -%d  Elo %.1f +/- %.1f  draws %.1f%%  LLR %.2f  nps A %d B %d%n",
+                games, wins, draws, losses, elo[0], elo[1], games == 0 ? 0.0 : 100.0 * draws / games,
+                sprt.llr(wins, draws, losses), nodesPerSecond(0), nodesPerSecond(1));
+    }
+
+    private long nodesPerSecond(int player) {
+        return searchNanos[player] == 0 ? 0 : (long) (nodes[player] * 1e9 / searchNanos[player]);
+    }
+}
@@ -0,0 +1,101 @@
+package com.pfa.engine;
+
+import java.util.Arrays;
+
+// Fixed-size hash table of search results, stored in two parallel long arrays.
+// Entries live in buckets of two: the first slot keeps the deepest result of the current search,
+// the second is always replaced.
+// Search threads share one table without locking: each slot stores key ^ data, so a slot whose two
+// longs were written by different threads no longer matches any key and simply reads as a miss.
+public class TranspositionTable {
+    public static final int BOUND_NONE = 0;
+    public static final int BOUND_EXACT = 1;
+    public static final int BOUND_LOWER = 2; // score is at least the stored value (fail high)
+    public static final int BOUND_UPPER = 3; // score is at most the stored value (fail low)
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private int age = 0;
+
+    public TranspositionTable(int sizeMb) {
+        long entries = Math.max(2L, (long) sizeMb * 1024 * 1024 / 16);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+        keys = new long[size];
+        data = new long[size];
+        mask = size - 1;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(data, 0L);
+        age = 0;
+    }
+
+    // Called once per search so entries from earlier searches become preferred victims
+    public void newSearch() {
+        age = (age + 1) & 0x3F;
+    }
+
+    // Returns the packed entry for key, or 0 when the position is not in the table
+    public long probe(long key) {
+        int index = (int) key & mask & ~1;
+        long entry = data[index];
+        if ((keys[index] ^ entry) == key) {
+            return entry;
+        }
+        entry = data[index + 1];
+        if ((keys[index + 1] ^ entry) == key) {
+            return entry;
+        }
+        return 0L;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        int index = (int) key & mask & ~1;
+        int slot;
+
+        long first = data[index];
+        long second = data[index + 1];
+        if ((keys[index] ^ first) == key) {
+            slot = index;
+        } else if ((keys[index + 1] ^ second) == key) {
+            slot = index + 1;
+        } else {
+            int existingDepth = (int) (first >>> 48) & 0xFF;
+            int existingAge = (int) (first >>> 58) & 0x3F;
+            slot = (first != 0 && existingAge == age && depth < existingDepth) ? index + 1 : index;
+        }
+
+        // Keep the old best move when the new result has none
+        long old = slot == index ? first : second;
+        if (move == 0 && (keys[slot] ^ old) == key) {
+            move = (int) old;
+        }
+
+        score = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score));
+        long entry = (move & 0xFFFFFFFFL)
+                | ((score & 0xFFFFL) << 32)
+                | ((long) (depth & 0xFF) << 48)
+                | ((long) bound << 56)
+                | ((long) age << 58);
+        keys[slot] = key ^ entry;
+        data[slot] = entry;
+    }
+
+    public static int getMove(long entry) {
+        return (int) entry;
+    }
+
+    public static int getScore(long entry) {
+        return (short) (entry >>> 32);
+    }
+
+    public static int getDepth(long entry) {
+        return (int) (entry >>> 48) & 0xFF;
+    }
+
+    public static int getBound(long entry) {
+        return (int) (entry >>> 56) & 0x3;
+    }
+}
@@ -0,0 +1,327 @@
+package com.pfa.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Universal Chess Interface front end: reads commands from stdin and answers on stdout, so the engine can be
+// run by GUIs, tournament managers and scripts without the JavaFX client. Searches run on their own thread so
+// stop and ponderhit are read while they go. At the end of input the running search is allowed to finish,
+// which makes a file of commands a batch job.
+// Usage: java com.pfa.engine.Uci
+public class Uci {
+    private static final String NAME = "webchess";
+    private static final int MAX_HASH_MB = 1024;
+    private static final int MAX_THREADS = 64;
+
+    // Time management: without movestogo the remaining time is spread over this many moves, and this much is
+    // kept back for communication delays
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    private static final long MOVE_OVERHEAD_MS = 50;
+
+    private final Engine engine = new Engine(1, true);
+    private final PrintStream out;
+    private VirtualBoard position = VirtualBoard.startPosition();
+
+    // Search in progress; each go gets fresh flags so a late stop can never reach the next search
+    private Thread searchThread;
+    private AtomicBoolean stopFlag = new AtomicBoolean();
+    private AtomicBoolean ponderFlag = new AtomicBoolean();
+    private boolean infiniteSearch;
+    // Set by stop and quit; go infinite and go ponder hold their bestmove until then
+    private final Object stopLock = new Object();
+    private boolean stopRequested;
+
+    public Uci(PrintStream out) {
+        this.out = out;
+        engine.setListener(this::printInfo);
+    }
+
+    public static void main(String[] args) throws IOException {
+        new Uci(System.out).run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+    }
+
+    public void run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!handle(line.trim())) {
+                return;
+            }
+        }
+        // Nobody is left to send stop or ponderhit
+        if (infiniteSearch) {
+            requestStop();
+        }
+        ponderFlag.set(false);
+        waitForSearch();
+    }
+
+    // Executes one command; returns false on quit
+    private boolean handle(String line) {
+        String[] tokens = line.split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                out.println("id name " + NAME);
+                out.println("id author pfa");
+                out.println("option name Hash type spin default " + Engine.DEFAULT_HASH_MB + " min 1 max "
+                        + MAX_HASH_MB);
+                out.println("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                out.println("option name Ponder type check default false");
+                out.println("uciok");
+                break;
+            case "isready":
+                out.println("readyok");
+                break;
+            case "setoption":
+                waitForSearch();
+                setOption(tokens);
+                break;
+            case "ucinewgame":
+                waitForSearch();
+                engine.clearHash();
+                position = VirtualBoard.startPosition();
+                break;
+            case "position":
+                waitForSearch();
+                setPosition(tokens);
+                break;
+            case "go":
+                waitForSearch();
+                go(tokens);
+                break;
+            case "stop":
+                requestStop();
+                break;
+            case "ponderhit":
+                // The search goes on under its normal budget, counting the time already spent
+                ponderFlag.set(false);
+                break;
+            case "quit":
+                requestStop();
+                waitForSearch();
+                return false;
+            default:
+                // Unknown commands, including empty lines, are ignored as the protocol asks
+                break;
+        }
+        return true;
+    }
+
+    // setoption name <id> value <x>
+    private void setOption(String[] tokens) {
+        String name = valueOf(tokens, "name", "value");
+        String value = valueOf(tokens, "value", null);
+        try {
+            if (name.equalsIgnoreCase("Hash")) {
+                engine.setHashSize(Math.min(Integer.parseInt(value), MAX_HASH_MB));
+            } else if (name.equalsIgnoreCase("Threads")) {
+                engine.setThreads(Math.min(Integer.parseInt(value), MAX_THREADS));
+            }
+        } catch (NumberFormatException e) {
+            out.println("info string invalid value for " + name + ": " + value);
+        }
+    }
+
+    // The words after key up to the word end (or the end of the line), joined by spaces
+    private static String valueOf(String[] tokens, String key, String end) {
+        StringBuilder value = new StringBuilder();
+        boolean inside = false;
+        for (String token : tokens) {
+            if (inside && token.equals(end)) {
+                break;
+            }
+            if (inside) {
+                value.append(value.length() > 0 ? " " : "").append(token);
+            }
+            inside |= token.equals(key);
+        }
+        return value.toString();
+    }
+
+    // position [startpos | fen <fen>] [moves <move>...]
+    private void setPosition(String[] tokens) {
+        int index = 1;
+        VirtualBoard next;
+        try {
+            if (tokens.length > 1 && tokens[1].equals("fen")) {
+                StringBuilder fen = new StringBuilder();
+                for (index = 2; index < tokens.length && !tokens[index].equals("moves"); index++) {
+                    fen.append(tokens[index]).append(' ');
+                }
+                next = VirtualBoard.fromFen(fen.toString());
+            } else {
+                next = VirtualBoard.startPosition();
+                index = 2;
+            }
+        } catch (IllegalArgumentException e) {
+            out.println("info string invalid position: " + String.join(" ", tokens));
+            return;
+        }
+
+        if (index < tokens.length && tokens[index].equals("moves")) {
+            for (index++; index < tokens.length; index++) {
+                int move = PackedMove.parse(next, tokens[index]);
+                if (move == PackedMove.NONE) {
+                    out.println("info string illegal move " + tokens[index]);
+                    break;
+                }
+                next.makeMove(move);
+            }
+        }
+        position = next;
+    }
+
+    // go [depth n] [nodes n] [movetime ms] [wtime ms] [btime ms] [winc ms] [binc ms] [movestogo n] [infinite]
+    // [ponder]
+    private void go(String[] tokens) {
+        SearchLimits limits = new SearchLimits();
+        long time = -1;
+        long increment = 0;
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        boolean infinite = false;
+        boolean ponder = false;
+        boolean white = position.isWhiteToMove();
+
+        for (int i = 1; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.equals("infinite")) {
+                infinite = true;
+                continue;
+            }
+            if (token.equals("ponder")) {
+                ponder = true;
+                continue;
+            }
+            if (i + 1 >= tokens.length) {
+                break;
+            }
+            long value;
+            try {
+                value = Long.parseLong(tokens[i + 1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            i++;
+            switch (token) {
+                case "depth":
+                    limits.depth = (int) Math.max(1, Math.min(value, SearchLimits.MAX_DEPTH));
+                    break;
+                case "nodes":
+                    limits.nodes = Math.max(1, value);
+                    break;
+                case "movetime":
+                    limits.timeMs = Math.max(1, value - MOVE_OVERHEAD_MS);
+                    break;
+                case "wtime":
+                    time = white ? value : time;
+                    break;
+                case "btime":
+                    time = white ? time : value;
+                    break;
+                case "winc":
+                    increment = white ? value : increment;
+                    break;
+                case "binc":
+                    increment = white ? increment : value;
+                    break;
+                case "movestogo":
+                    movesToGo = (int) Math.max(1, value);
+                    break;
+                default:
+                    i--;
+                    break;
+            }
+        }
+        if (time >= 0) {
+            long budget = time / movesToGo + increment * 3 / 4;
+            limits.timeMs = Math.min(limits.timeMs, Math.max(1, Math.min(budget, time - MOVE_OVERHEAD_MS)));
+        }
+
+        VirtualBoard root = new VirtualBoard(position);
+        int[] rootMoves = new int[VirtualBoard.MAX_MOVES];
+        int moveCount = root.generateLegalMoves(rootMoves, 0);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicBoolean pondering = new AtomicBoolean(ponder);
+        // go infinite is a ponder search that ponderhit never ends
+        AtomicBoolean unlimited = infinite ? new AtomicBoolean(true) : pondering;
+        AtomicBoolean holdUntil = infinite ? null : pondering;
+        boolean waitForStop = infinite || ponder;
+        stopFlag = stop;
+        ponderFlag = pondering;
+        infiniteSearch = infinite;
+        synchronized (stopLock) {
+            stopRequested = false;
+        }
+
+        searchThread = new Thread(() -> {
+            int best = PackedMove.NONE;
+            int ponderMove = PackedMove.NONE;
+            if (moveCount > 0) {
+                best = engine.search(root, rootMoves, moveCount, limits, stop, unlimited);
+                ponderMove = engine.getPonderMove();
+            }
+            // The protocol forbids bestmove before stop or ponderhit in these modes, even after a proven mate
+            if (waitForStop) {
+                awaitStop(holdUntil);
+            }
+            out.println("bestmove " + PackedMove.toString(best)
+                    + (ponderMove != PackedMove.NONE ? " ponder " + PackedMove.toString(ponderMove) : ""));
+        }, "UCI search");
+        searchThread.start();
+    }
+
+    private void requestStop() {
+        stopFlag.set(true);
+        synchronized (stopLock) {
+            stopRequested = true;
+            stopLock.notifyAll();
+        }
+    }
+
+    // Waits for stop, or for ponderhit when pondering is not null
+    private void awaitStop(AtomicBoolean pondering) {
+        synchronized (stopLock) {
+            while (!stopRequested && (pondering == null || pondering.get())) {
+                try {
+                    stopLock.wait(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void waitForSearch() {
+        if (searchThread == null) {
+            return;
+        }
+        try {
+            searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+    }
+
+    private void printInfo(int depth, int score, long nodes, long elapsedMs, int[] pv, int pvLength) {
+        StringBuilder info = new StringBuilder("info depth ").append(depth);
+        if (Math.abs(score) >= SearchWorker.MATE_BOUND) {
+            int plies = SearchWorker.MATE_SCORE - Math.abs(score);
+            info.append(" score mate ").append(score > 0 ? (plies + 1) / 2 : -(plies / 2));
+        } else {
+            info.append(" score cp ").append(score);
+        }
+        info.append(" nodes ").append(nodes)
+                .append(" nps ").append(nodes * 1000 / Math.max(1, elapsedMs))
+                .append(" time ").append(elapsedMs)
+                .append(" pv");
+        for (int i = 0; i < pvLength; i++) {
+            info.append(' ').append(PackedMove.toString(pv[i]));
+        }
+        out.println(info);
+    }
+}
@@ -0,0 +1,123 @@
+package com.pfa.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// Match player backed by an external engine process spoken to over UCI, such as another build of this
+// engine running com.pfa.engine.Uci. Each player starts its own process.
+public class UciPlayer implements MatchPlayer {
+    private final Process process;
+    private final BufferedWriter in;
+    private final BufferedReader out;
+    private long lastNodes;
+
+    // command is split at whitespace into the program and its arguments
+    public UciPlayer(String command, int hashMb) {
+        try {
+            process = new ProcessBuilder(command.trim().split("\\s+"))
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start engine: " + command, e);
+        }
+        in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+        send("uci");
+        readUntil("uciok");
+        send("setoption name Hash value " + hashMb);
+        send("isready");
+        readUntil("readyok");
+    }
+
+    @Override
+    public void newGame() {
+        send("ucinewgame");
+        send("isready");
+        readUntil("readyok");
+    }
+
+    @Override
+    public int chooseMove(VirtualBoard position, String startFen, int[] moves, int moveCount, SearchLimits limits) {
+        StringBuilder command = new StringBuilder("position fen ").append(startFen);
+        if (moveCount > 0) {
+            command.append(" moves");
+            for (int i = 0; i < moveCount; i++) {
+                command.append(' ').append(PackedMove.toString(moves[i]));
+            }
+        }
+        send(command.toString());
+
+        if (limits.nodes != Long.MAX_VALUE) {
+            send("go nodes " + limits.nodes);
+        } else if (limits.timeMs != Long.MAX_VALUE) {
+            send("go movetime " + limits.timeMs);
+        } else {
+            send("go depth " + limits.depth);
+        }
+
+        lastNodes = 0;
+        String line;
+        while ((line = readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens[0].equals("info")) {
+                for (int i = 1; i + 1 < tokens.length; i++) {
+                    if (tokens[i].equals("nodes")) {
+                        lastNodes = Long.parseLong(tokens[i + 1]);
+                    }
+                }
+            } else if (tokens[0].equals("bestmove")) {
+                return tokens.length > 1 ? PackedMove.parse(position, tokens[1]) : PackedMove.NONE;
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    @Override
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    @Override
+    public void close() {
+        try {
+            send("quit");
+        } catch (UncheckedIOException e) {
+            // Already gone
+        }
+        process.destroy();
+    }
+
+    private void send(String command) {
+        try {
+            in.write(command);
+            in.newLine();
+            in.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Engine process closed its input", e);
+        }
+    }
+
+    private String readLine() {
+        try {
+            return out.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readUntil(String expected) {
+        String line;
+        while ((line = readLine()) != null) {
+            if (line.trim().equals(expected)) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Engine exited before answering " + expected);
+    }
+}
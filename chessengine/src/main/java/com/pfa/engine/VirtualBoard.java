@@ -0,0 +1,968 @@
+package com.pfa.engine;
+
+import java.util.Arrays;
+
+// Mutable bitboard position used by the engine for move generation and search; see Position for an immutable
+// snapshot that can be shared between threads.
+// One long per piece type and color plus color/occupancy masks, with a mailbox for constant-time square lookups.
+public class VirtualBoard {
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+
+    // Piece codes are color * 6 + type; EMPTY marks a free square in the mailbox
+    public static final int EMPTY = 12;
+
+    // Castling rights bits
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    // Upper bound on the number of legal moves in any position
+    public static final int MAX_MOVES = 256;
+    // Plies without a capture or pawn move after which the game is drawn
+    public static final int FIFTY_MOVE_PLIES = 100;
+    // Initial size of the undo history; it grows when a long game fills it
+    private static final int INITIAL_HISTORY = 1024;
+
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Rights that survive a move touching each square; a king or rook leaving its home square drops them
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            CASTLING_MASK[sq] = 15;
+        }
+        CASTLING_MASK[0] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[4] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_MASK[7] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[56] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[60] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[63] &= ~WHITE_KINGSIDE;
+    }
+
+    private final long[] pieceBB = new long[12];
+    private final long[] colorBB = new long[2];
+    private long occupied;
+    private final int[] squares = new int[64];
+
+    private boolean isWhiteToMove;
+    private int castlingRights;
+    private int enPassantSquare = -1;
+    private long zobristKey;
+    // Zobrist key of the pawns alone, for the pawn hash table
+    private long pawnKey;
+    // Sum of Evaluator.PIECE_SQUARE_VALUES over all pieces, white minus black
+    private int pieceSquareScore;
+    // Plies since the last capture or pawn move, for the fifty-move rule and the repetition check, and the
+    // move number that starts at 1 and grows after black moves
+    private int halfmoveClock;
+    private int fullmoveNumber = 1;
+
+    // Undo information, one entry per move made
+    private int[] historyMove = new int[INITIAL_HISTORY];
+    private int[] historyCastling = new int[INITIAL_HISTORY];
+    private int[] historyEnPassant = new int[INITIAL_HISTORY];
+    private long[] historyKey = new long[INITIAL_HISTORY];
+    private int[] historyHalfmove = new int[INITIAL_HISTORY];
+    private int historySize = 0;
+
+    private final int[] scratchMoves = new int[MAX_MOVES];
+    // Swap list for static exchange evaluation; an exchange can involve at most 32 pieces
+    private final int[] seeGain = new int[32];
+
+    // Full recomputation of the Zobrist key; makeMove/undoMove keep it up to date incrementally
+    public long computeKey() {
+        long key = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            if (squares[sq] != EMPTY) {
+                key ^= Zobrist.PIECE_SQUARE[squares[sq]][sq];
+            }
+        }
+        key ^= Zobrist.CASTLING[castlingRights];
+        if (enPassantSquare >= 0) {
+            key ^= Zobrist.EN_PASSANT_FILE[enPassantSquare & 7];
+        }
+        if (!isWhiteToMove) {
+            key ^= Zobrist.SIDE_TO_MOVE;
+        }
+        return key;
+    }
+
+    private VirtualBoard() {
+        for (int sq = 0; sq < 64; sq++) {
+            squares[sq] = EMPTY;
+        }
+    }
+
+    // Independent copy of the current position, for search threads. Only the moves since the last capture or
+    // pawn move are copied from the undo history: all that a repetition can reach back to.
+    public VirtualBoard(VirtualBoard other) {
+        int count = Math.min(other.historySize, Math.min(other.halfmoveClock, FIFTY_MOVE_PLIES));
+        int offset = other.historySize - count;
+        System.arraycopy(other.historyMove, offset, historyMove, 0, count);
+        System.arraycopy(other.historyCastling, offset, historyCastling, 0, count);
+        System.arraycopy(other.historyEnPassant, offset, historyEnPassant, 0, count);
+        System.arraycopy(other.historyKey, offset, historyKey, 0, count);
+        System.arraycopy(other.historyHalfmove, offset, historyHalfmove, 0, count);
+        historySize = count;
+        System.arraycopy(other.pieceBB, 0, pieceBB, 0, 12);
+        System.arraycopy(other.colorBB, 0, colorBB, 0, 2);
+        System.arraycopy(other.squares, 0, squares, 0, 64);
+        occupied = other.occupied;
+        isWhiteToMove = other.isWhiteToMove;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        zobristKey = other.zobristKey;
+        pawnKey = other.pawnKey;
+        pieceSquareScore = other.pieceSquareScore;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+    }
+
+    public static VirtualBoard startPosition() {
+        return fromFen(START_FEN);
+    }
+
+    // Parses a position in Forsyth-Edwards Notation; move counters are optional. Throws IllegalArgumentException
+    // for anything malformed. Castling rights without the king and rook on their home squares are dropped.
+    public static VirtualBoard fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4 || fields.length > 6) {
+            throw invalidFen(fen, "expected 4 to 6 fields");
+        }
+
+        int[] squares = new int[64];
+        Arrays.fill(squares, EMPTY);
+        String[] ranks = fields[0].split("/", -1);
+        if (ranks.length != 8) {
+            throw invalidFen(fen, "expected 8 ranks");
+        }
+        int[] kings = new int[2];
+        for (int row = 0; row < 8; row++) {
+            int col = 0;
+            for (char c : ranks[row].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    col += c - '0';
+                    continue;
+                }
+                int type = "pnbrqk".indexOf(Character.toLowerCase(c));
+                if (type < 0 || col >= 8) {
+                    throw invalidFen(fen, "bad rank " + ranks[row]);
+                }
+                if (type == PAWN && (row == 0 || row == 7)) {
+                    throw invalidFen(fen, "pawn on the first or last rank");
+                }
+                int color = Character.isUpperCase(c) ? WHITE : BLACK;
+                if (type == KING) {
+                    kings[color]++;
+                }
+                squares[row * 8 + col++] = makePiece(color, type);
+            }
+            if (col != 8) {
+                throw invalidFen(fen, "bad rank " + ranks[row]);
+            }
+        }
+        if (kings[WHITE] != 1 || kings[BLACK] != 1) {
+            throw invalidFen(fen, "each side needs one king");
+        }
+
+        if (!fields[1].equals("w") && !fields[1].equals("b")) {
+            throw invalidFen(fen, "side to move must be w or b");
+        }
+        boolean whiteToMove = fields[1].equals("w");
+
+        int castlingRights = 0;
+        if (!fields[2].equals("-")) {
+            for (char c : fields[2].toCharArray()) {
+                int right = "KQkq".indexOf(c);
+                if (right < 0 || (castlingRights & (1 << right)) != 0) {
+                    throw invalidFen(fen, "bad castling field " + fields[2]);
+                }
+                castlingRights |= 1 << right;
+            }
+        }
+
+        int ep = -1;
+        if (!fields[3].equals("-")) {
+            // The square a pawn of the side not to move skipped: rank 6 with white to move, rank 3 with black
+            char epRank = whiteToMove ? '6' : '3';
+            if (fields[3].length() != 2 || fields[3].charAt(0) < 'a' || fields[3].charAt(0) > 'h'
+                    || fields[3].charAt(1) != epRank) {
+                throw invalidFen(fen, "bad en passant square " + fields[3]);
+            }
+            ep = ('8' - epRank) * 8 + (fields[3].charAt(0) - 'a');
+        }
+
+        int halfmoveClock = 0;
+        int fullmoveNumber = 1;
+        try {
+            if (fields.length > 4) {
+                halfmoveClock = Integer.parseInt(fields[4]);
+            }
+            if (fields.length > 5) {
+                fullmoveNumber = Integer.parseInt(fields[5]);
+            }
+        } catch (NumberFormatException e) {
+            throw invalidFen(fen, "bad move counters");
+        }
+        if (halfmoveClock < 0 || fullmoveNumber < 1) {
+            throw invalidFen(fen, "bad move counters");
+        }
+
+        VirtualBoard position = of(squares, whiteToMove, castlingRights, ep);
+        if (position.isInCheck(!whiteToMove)) {
+            throw invalidFen(fen, "the side not to move is in check");
+        }
+        position.setMoveCounters(halfmoveClock, fullmoveNumber);
+        return position;
+    }
+
+    private static IllegalArgumentException invalidFen(String fen, String reason) {
+        return new IllegalArgumentException("Invalid FEN (" + reason + "): " + fen);
+    }
+
+    // Forsyth-Edwards Notation of the position. The en passant square is only given when a capture there is
+    // possible, as most current programs write it.
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = squares[row * 8 + col];
+                if (piece == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char letter = "pnbrqk".charAt(pieceType(piece));
+                fen.append(pieceColor(piece) == WHITE ? Character.toUpperCase(letter) : letter);
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(isWhiteToMove ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        }
+        for (int right = 0; right < 4; right++) {
+            if ((castlingRights & (1 << right)) != 0) {
+                fen.append("KQkq".charAt(right));
+            }
+        }
+        fen.append(' ').append(enPassantSquare >= 0 ? PackedMove.squareName(enPassantSquare) : "-");
+        return fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber).toString();
+    }
+
+    // Builds a position from a mailbox of 64 piece codes (EMPTY for free squares), indexed row * 8 + col with
+    // row 0 at black's side. enPassantSquare is the square a pawn skipped, or -1; it is only kept when a pawn
+    // of the side to move can capture there, as the Zobrist key assumes. Castling rights are only kept with the
+    // king and rook on their home squares.
+    public static VirtualBoard of(int[] squares, boolean whiteToMove, int castlingRights, int enPassantSquare) {
+        VirtualBoard position = new VirtualBoard();
+        for (int sq = 0; sq < 64; sq++) {
+            if (squares[sq] != EMPTY) {
+                position.addPiece(squares[sq], sq);
+            }
+        }
+
+        position.isWhiteToMove = whiteToMove;
+        position.castlingRights = castlingRights & position.homeCastlingRights();
+        if (enPassantSquare >= 0) {
+            int color = whiteToMove ? WHITE : BLACK;
+            // The pushed pawn stands one square past the skipped square, seen from the side to move
+            int pushed = enPassantSquare + (whiteToMove ? 8 : -8);
+            if ((enPassantSquare >> 3) == (whiteToMove ? 2 : 5) && position.squares[enPassantSquare] == EMPTY
+                    && position.squares[pushed] == makePiece(color ^ 1, PAWN)
+                    && (Bitboards.PAWN_ATTACKS[color ^ 1][enPassantSquare]
+                    & position.pieceBB[makePiece(color, PAWN)]) != 0) {
+                position.enPassantSquare = enPassantSquare;
+            }
+        }
+
+        position.zobristKey = position.computeKey();
+        return position;
+    }
+
+    // Castling rights the pieces allow: a king on its home square and a rook on the corner for each side
+    private int homeCastlingRights() {
+        int rights = 0;
+        if (squares[60] == makePiece(WHITE, KING)) {
+            rights |= (squares[63] == makePiece(WHITE, ROOK) ? WHITE_KINGSIDE : 0)
+                    | (squares[56] == makePiece(WHITE, ROOK) ? WHITE_QUEENSIDE : 0);
+        }
+        if (squares[4] == makePiece(BLACK, KING)) {
+            rights |= (squares[7] == makePiece(BLACK, ROOK) ? BLACK_KINGSIDE : 0)
+                    | (squares[0] == makePiece(BLACK, ROOK) ? BLACK_QUEENSIDE : 0);
+        }
+        return rights;
+    }
+
+    public static int typeOf(String name) {
+        switch (name) {
+            case "Pawn":
+                return PAWN;
+            case "Knight":
+                return KNIGHT;
+            case "Bishop":
+                return BISHOP;
+            case "Rook":
+                return ROOK;
+            case "Queen":
+                return QUEEN;
+            case "King":
+                return KING;
+            default:
+                throw new IllegalArgumentException("Unknown piece type: " + name);
+        }
+    }
+
+    public static int makePiece(int color, int type) {
+        return color * 6 + type;
+    }
+
+    public static int pieceType(int piece) {
+        return piece % 6;
+    }
+
+    public static int pieceColor(int piece) {
+        return piece / 6;
+    }
+
+    private void addPiece(int piece, int sq) {
+        long b = 1L << sq;
+        pieceBB[piece] |= b;
+        colorBB[pieceColor(piece)] |= b;
+        occupied |= b;
+        squares[sq] = piece;
+        zobristKey ^= Zobrist.PIECE_SQUARE[piece][sq];
+        pawnKey ^= Zobrist.PAWN_SQUARE[piece][sq];
+        pieceSquareScore += Evaluator.PIECE_SQUARE_VALUES[piece][sq];
+    }
+
+    private void removePiece(int piece, int sq) {
+        long b = 1L << sq;
+        pieceBB[piece] &= ~b;
+        colorBB[pieceColor(piece)] &= ~b;
+        occupied &= ~b;
+        squares[sq] = EMPTY;
+        zobristKey ^= Zobrist.PIECE_SQUARE[piece][sq];
+        pawnKey ^= Zobrist.PAWN_SQUARE[piece][sq];
+        pieceSquareScore -= Evaluator.PIECE_SQUARE_VALUES[piece][sq];
+    }
+
+    private void movePiece(int piece, int from, int to) {
+        long b = (1L << from) | (1L << to);
+        pieceBB[piece] ^= b;
+        colorBB[pieceColor(piece)] ^= b;
+        occupied ^= b;
+        squares[from] = EMPTY;
+        squares[to] = piece;
+        zobristKey ^= Zobrist.PIECE_SQUARE[piece][from] ^ Zobrist.PIECE_SQUARE[piece][to];
+        pawnKey ^= Zobrist.PAWN_SQUARE[piece][from] ^ Zobrist.PAWN_SQUARE[piece][to];
+        pieceSquareScore += Evaluator.PIECE_SQUARE_VALUES[piece][to] - Evaluator.PIECE_SQUARE_VALUES[piece][from];
+    }
+
+    public boolean isWhiteToMove() {
+        return isWhiteToMove;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // Sets the counters written by toFen; they play no part in move generation or search
+    public void setMoveCounters(int halfmoveClock, int fullmoveNumber) {
+        this.halfmoveClock = Math.max(0, halfmoveClock);
+        this.fullmoveNumber = Math.max(1, fullmoveNumber);
+    }
+
+    public long getPieceBitboard(int piece) {
+        return pieceBB[piece];
+    }
+
+    // Material and piece-square bonuses in centipawns, white minus black, updated by makeMove/undoMove
+    public int getPieceSquareScore() {
+        return pieceSquareScore;
+    }
+
+    public long getColorBitboard(int color) {
+        return colorBB[color];
+    }
+
+    public long getOccupied() {
+        return occupied;
+    }
+
+    public int getPieceAt(int sq) {
+        return squares[sq];
+    }
+
+    public int getPieceAt(int col, int row) {
+        return squares[row * 8 + col];
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public long getZobristKey() {
+        return zobristKey;
+    }
+
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    public int findKing(int color) {
+        long king = pieceBB[makePiece(color, KING)];
+        return king == 0 ? -1 : Long.numberOfTrailingZeros(king);
+    }
+
+    // True if any piece of byColor attacks sq with the current occupancy
+    public boolean isSquareAttacked(int sq, int byColor) {
+        int offset = byColor * 6;
+        if ((Bitboards.PAWN_ATTACKS[byColor ^ 1][sq] & pieceBB[offset + PAWN]) != 0)
+            return true;
+        if ((Bitboards.KNIGHT_ATTACKS[sq] & pieceBB[offset + KNIGHT]) != 0)
+            return true;
+        if ((Bitboards.KING_ATTACKS[sq] & pieceBB[offset + KING]) != 0)
+            return true;
+        long queens = pieceBB[offset + QUEEN];
+        if ((Bitboards.bishopAttacks(sq, occupied) & (pieceBB[offset + BISHOP] | queens)) != 0)
+            return true;
+        return (Bitboards.rookAttacks(sq, occupied) & (pieceBB[offset + ROOK] | queens)) != 0;
+    }
+
+    public boolean isInCheck(boolean isWhite) {
+        int color = isWhite ? WHITE : BLACK;
+        int kingSquare = findKing(color);
+        return kingSquare >= 0 && isSquareAttacked(kingSquare, color ^ 1);
+    }
+
+    // Builds the packed move for a from/to pair, inferring the flags; pawns reaching the last row become queens
+    public int encodeMove(int from, int to) {
+        int piece = squares[from];
+        int type = pieceType(piece);
+        int captured = squares[to];
+        int flags = PackedMove.QUIET;
+
+        if (type == PAWN) {
+            if (to == enPassantSquare && captured == EMPTY) {
+                flags = PackedMove.EN_PASSANT;
+                captured = makePiece(pieceColor(piece) ^ 1, PAWN);
+            } else if (Math.abs(to - from) == 16) {
+                flags = PackedMove.DOUBLE_PUSH;
+            } else if ((to >> 3) == 0 || (to >> 3) == 7) {
+                flags = PackedMove.PROMOTE_QUEEN;
+            }
+        } else if (type == KING && Math.abs(to - from) == 2) {
+            flags = PackedMove.CASTLE;
+        }
+        return PackedMove.encode(from, to, piece, captured, flags);
+    }
+
+    public void makeMove(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int moved = PackedMove.piece(move);
+        int captured = PackedMove.captured(move);
+        int flags = PackedMove.flags(move);
+        int color = pieceColor(moved);
+
+        if (historySize == historyMove.length) {
+            growHistory();
+        }
+        int h = historySize++;
+        historyMove[h] = move;
+        historyCastling[h] = castlingRights;
+        historyEnPassant[h] = enPassantSquare;
+        historyKey[h] = zobristKey;
+        historyHalfmove[h] = halfmoveClock;
+        halfmoveClock = captured != EMPTY || pieceType(moved) == PAWN ? 0 : halfmoveClock + 1;
+        if (color == BLACK) {
+            fullmoveNumber++;
+        }
+
+        if (flags == PackedMove.EN_PASSANT) {
+            removePiece(captured, color == WHITE ? to + 8 : to - 8);
+        } else if (captured != EMPTY) {
+            removePiece(captured, to);
+        }
+
+        if (flags >= PackedMove.PROMOTE_KNIGHT) {
+            removePiece(moved, from);
+            addPiece(makePiece(color, PackedMove.promotionType(move)), to);
+        } else {
+            movePiece(moved, from, to);
+        }
+
+        // Handle castling: move the rook next to the king
+        if (flags == PackedMove.CASTLE) {
+            int rook = makePiece(color, ROOK);
+            if (to > from) {
+                movePiece(rook, from + 3, from + 1);
+            } else {
+                movePiece(rook, from - 4, from - 1);
+            }
+        }
+
+        if (enPassantSquare >= 0) {
+            zobristKey ^= Zobrist.EN_PASSANT_FILE[enPassantSquare & 7];
+            enPassantSquare = -1;
+        }
+        // Only record an en passant square an enemy pawn can actually use, so transpositions hash alike
+        if (flags == PackedMove.DOUBLE_PUSH) {
+            int ep = (from + to) / 2;
+            if ((Bitboards.PAWN_ATTACKS[color][ep] & pieceBB[makePiece(color ^ 1, PAWN)]) != 0) {
+                enPassantSquare = ep;
+                zobristKey ^= Zobrist.EN_PASSANT_FILE[ep & 7];
+            }
+        }
+
+        zobristKey ^= Zobrist.CASTLING[castlingRights];
+        castlingRights &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        zobristKey ^= Zobrist.CASTLING[castlingRights];
+
+        isWhiteToMove = !isWhiteToMove;
+        zobristKey ^= Zobrist.SIDE_TO_MOVE;
+    }
+
+    // Passes the turn without moving, for null-move pruning; must be undone with undoNullMove
+    public void makeNullMove() {
+        if (historySize == historyMove.length) {
+            growHistory();
+        }
+        int h = historySize++;
+        historyMove[h] = PackedMove.NONE;
+        historyCastling[h] = castlingRights;
+        historyEnPassant[h] = enPassantSquare;
+        historyKey[h] = zobristKey;
+        historyHalfmove[h] = halfmoveClock;
+
+        if (enPassantSquare >= 0) {
+            zobristKey ^= Zobrist.EN_PASSANT_FILE[enPassantSquare & 7];
+            enPassantSquare = -1;
+        }
+        isWhiteToMove = !isWhiteToMove;
+        zobristKey ^= Zobrist.SIDE_TO_MOVE;
+    }
+
+    // Doubles the undo history when a long game, or a search from late in one, fills it
+    private void growHistory() {
+        int capacity = historyMove.length * 2;
+        historyMove = Arrays.copyOf(historyMove, capacity);
+        historyCastling = Arrays.copyOf(historyCastling, capacity);
+        historyEnPassant = Arrays.copyOf(historyEnPassant, capacity);
+        historyKey = Arrays.copyOf(historyKey, capacity);
+        historyHalfmove = Arrays.copyOf(historyHalfmove, capacity);
+    }
+
+    public void undoNullMove() {
+        int h = --historySize;
+        enPassantSquare = historyEnPassant[h];
+        zobristKey = historyKey[h];
+        isWhiteToMove = !isWhiteToMove;
+    }
+
+    // True when the position occurred before since the last capture or pawn move, with the same side to move.
+    // The search stops at a null move, since the positions before it were reached with the turn passed.
+    public boolean isRepetition() {
+        int earliest = Math.max(0, historySize - halfmoveClock);
+        for (int h = historySize - 1; h >= earliest; h--) {
+            if (historyMove[h] == PackedMove.NONE) {
+                return false;
+            }
+            if (((historySize - h) & 1) == 0 && historyKey[h] == zobristKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // True when color has a piece other than pawns and its king; without one, zugzwang is common
+    public boolean hasNonPawnMaterial(int color) {
+        return (colorBB[color] & ~(pieceBB[makePiece(color, PAWN)] | pieceBB[makePiece(color, KING)])) != 0;
+    }
+
+    public void undoMove() {
+        if (historySize == 0)
+            return;
+
+        int h = --historySize;
+        int move = historyMove[h];
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int moved = PackedMove.piece(move);
+        int captured = PackedMove.captured(move);
+        int flags = PackedMove.flags(move);
+
+        if (flags >= PackedMove.PROMOTE_KNIGHT) {
+            removePiece(squares[to], to);
+            addPiece(moved, from);
+        } else {
+            movePiece(moved, to, from);
+        }
+
+        if (flags == PackedMove.CASTLE) {
+            int rook = makePiece(pieceColor(moved), ROOK);
+            if (to > from) {
+                movePiece(rook, from + 1, from + 3);
+            } else {
+                movePiece(rook, from - 1, from - 4);
+            }
+        }
+
+        if (flags == PackedMove.EN_PASSANT) {
+            addPiece(captured, pieceColor(moved) == WHITE ? to + 8 : to - 8);
+        } else if (captured != EMPTY) {
+            addPiece(captured, to);
+        }
+
+        castlingRights = historyCastling[h];
+        enPassantSquare = historyEnPassant[h];
+        zobristKey = historyKey[h];
+        halfmoveClock = historyHalfmove[h];
+        if (pieceColor(moved) == BLACK) {
+            fullmoveNumber--;
+        }
+        isWhiteToMove = !isWhiteToMove;
+    }
+
+    public boolean isGameOver() {
+        if (findKing(isWhiteToMove ? WHITE : BLACK) < 0)
+            return true;
+
+        return !hasLegalMove();
+    }
+
+    public boolean isCheckmate() {
+        if (findKing(isWhiteToMove ? WHITE : BLACK) < 0)
+            return false;
+
+        return isInCheck(isWhiteToMove) && !hasLegalMove();
+    }
+
+    public boolean isStalemate() {
+        if (findKing(isWhiteToMove ? WHITE : BLACK) < 0)
+            return false;
+
+        return !isInCheck(isWhiteToMove) && !hasLegalMove();
+    }
+
+    private boolean hasLegalMove() {
+        return generateLegalMoves(isWhiteToMove ? WHITE : BLACK, scratchMoves, 0) > 0;
+    }
+
+    // Legal moves for the side to move, written to moves from index start; returns the index past the last move
+    public int generateLegalMoves(int[] moves, int start) {
+        return generateLegalMoves(isWhiteToMove ? WHITE : BLACK, moves, start);
+    }
+
+    // Every piece of byColor attacking sq, given the occupancy occ
+    public long attackersTo(int sq, int byColor, long occ) {
+        int offset = byColor * 6;
+        long queens = pieceBB[offset + QUEEN];
+        return (Bitboards.PAWN_ATTACKS[byColor ^ 1][sq] & pieceBB[offset + PAWN])
+                | (Bitboards.KNIGHT_ATTACKS[sq] & pieceBB[offset + KNIGHT])
+                | (Bitboards.KING_ATTACKS[sq] & pieceBB[offset + KING])
+                | (Bitboards.bishopAttacks(sq, occ) & (pieceBB[offset + BISHOP] | queens))
+                | (Bitboards.rookAttacks(sq, occ) & (pieceBB[offset + ROOK] | queens));
+    }
+
+    // Static exchange evaluation: the material balance, in centipawns, for the side making move once both sides
+    // have captured on its target square with their least valuable attacker for as long as that pays.
+    // Sliders behind the pieces that capture join the exchange as the line opens (x-rays).
+    public int see(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int side = pieceColor(PackedMove.piece(move));
+        int attackerType = pieceType(PackedMove.piece(move));
+        long occ = occupied ^ (1L << from);
+
+        int depth = 0;
+        seeGain[0] = PackedMove.isCapture(move) ? Evaluator.PIECE_VALUES[pieceType(PackedMove.captured(move))] : 0;
+        if (PackedMove.flags(move) == PackedMove.EN_PASSANT) {
+            occ ^= 1L << (side == WHITE ? to + 8 : to - 8);
+        }
+        if (PackedMove.isPromotion(move)) {
+            attackerType = PackedMove.promotionType(move);
+            seeGain[0] += Evaluator.PIECE_VALUES[attackerType] - Evaluator.PAWN_VALUE;
+        }
+
+        long diagonal = pieceBB[BISHOP] | pieceBB[BISHOP + 6] | pieceBB[QUEEN] | pieceBB[QUEEN + 6];
+        long straight = pieceBB[ROOK] | pieceBB[ROOK + 6] | pieceBB[QUEEN] | pieceBB[QUEEN + 6];
+        long attackers = (attackersTo(to, WHITE, occ) | attackersTo(to, BLACK, occ)) & occ;
+
+        while (true) {
+            depth++;
+            side ^= 1;
+            // Score if the piece that just captured is taken in turn
+            seeGain[depth] = Evaluator.PIECE_VALUES[attackerType] - seeGain[depth - 1];
+
+            long sideAttackers = attackers & colorBB[side];
+            if (sideAttackers == 0) {
+                break;
+            }
+            attackerType = PAWN;
+            while ((sideAttackers & pieceBB[side * 6 + attackerType]) == 0) {
+                attackerType++;
+            }
+            // A king may only capture on a square the other side no longer attacks
+            if (attackerType == KING && (attackers & colorBB[side ^ 1]) != 0) {
+                break;
+            }
+
+            long attacker = sideAttackers & pieceBB[side * 6 + attackerType];
+            occ ^= attacker & -attacker;
+            if (attackerType == PAWN || attackerType == BISHOP || attackerType == QUEEN) {
+                attackers |= Bitboards.bishopAttacks(to, occ) & diagonal;
+            }
+            if (attackerType == ROOK || attackerType == QUEEN) {
+                attackers |= Bitboards.rookAttacks(to, occ) & straight;
+            }
+            attackers &= occ;
+        }
+
+        // The last entry is the speculative gain of a capture that never happened
+        while (--depth > 0) {
+            seeGain[depth - 1] = -Math.max(-seeGain[depth - 1], seeGain[depth]);
+        }
+        return seeGain[0];
+    }
+
+    // Own pieces that are the only blocker between the king and an enemy slider
+    private long pinnedPieces(int color, int kingSquare) {
+        int enemy = (color ^ 1) * 6;
+        long queens = pieceBB[enemy + QUEEN];
+        long snipers = (Bitboards.rookAttacks(kingSquare, 0) & (pieceBB[enemy + ROOK] | queens))
+                | (Bitboards.bishopAttacks(kingSquare, 0) & (pieceBB[enemy + BISHOP] | queens));
+
+        long pinned = 0;
+        for (; snipers != 0; snipers &= snipers - 1) {
+            long blockers = Bitboards.BETWEEN[kingSquare][Long.numberOfTrailingZeros(snipers)] & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+                pinned |= blockers & colorBB[color];
+            }
+        }
+        return pinned;
+    }
+
+    public int generateLegalMoves(int color, int[] moves, int count) {
+        return generateMoves(color, moves, count, false);
+    }
+
+    // Legal captures and queen promotions for the side to move, for quiescence search; quiet moves and
+    // underpromotions are never built. Returns the index past the last move written from start.
+    public int generateCaptures(int[] moves, int start) {
+        return generateMoves(isWhiteToMove ? WHITE : BLACK, moves, start, true);
+    }
+
+    // Legal move generation: checkers and pinned pieces are computed once, then every piece's targets are
+    // masked with the squares that resolve a check and, for pinned pieces, with the pin line.
+    // King moves, castling and en passant are verified separately.
+    private int generateMoves(int color, int[] moves, int count, boolean capturesOnly) {
+        int kingSquare = findKing(color);
+        if (kingSquare < 0) {
+            return count;
+        }
+
+        int enemy = color ^ 1;
+        long own = colorBB[color];
+        long checkers = attackersTo(kingSquare, enemy, occupied);
+
+        // Captures only ever land on enemy pieces
+        long targetMask = capturesOnly ? colorBB[enemy] : ~0L;
+
+        count = addKingMoves(color, kingSquare, targetMask, moves, count);
+
+        // Only the king can escape a double check
+        if ((checkers & (checkers - 1)) != 0) {
+            return count;
+        }
+
+        long checkMask = ~0L;
+        if (checkers != 0) {
+            checkMask = checkers | Bitboards.BETWEEN[kingSquare][Long.numberOfTrailingZeros(checkers)];
+        } else if (!capturesOnly) {
+            count = addCastlingMoves(color, kingSquare, moves, count);
+        }
+
+        long pinned = pinnedPieces(color, kingSquare);
+        long targets = ~own & checkMask & targetMask;
+
+        count = addPawnMoves(color, kingSquare, checkers, checkMask, pinned, capturesOnly, moves, count);
+
+        int piece = makePiece(color, KNIGHT);
+        // A pinned knight can never move
+        for (long knights = pieceBB[piece] & ~pinned; knights != 0; knights &= knights - 1) {
+            int from = Long.numberOfTrailingZeros(knights);
+            count = addMoves(from, piece, Bitboards.KNIGHT_ATTACKS[from] & targets, moves, count);
+        }
+        piece = makePiece(color, BISHOP);
+        for (long bishops = pieceBB[piece]; bishops != 0; bishops &= bishops - 1) {
+            int from = Long.numberOfTrailingZeros(bishops);
+            long attacks = Bitboards.bishopAttacks(from, occupied) & targets & pinMask(from, kingSquare, pinned);
+            count = addMoves(from, piece, attacks, moves, count);
+        }
+        piece = makePiece(color, ROOK);
+        for (long rooks = pieceBB[piece]; rooks != 0; rooks &= rooks - 1) {
+            int from = Long.numberOfTrailingZeros(rooks);
+            long attacks = Bitboards.rookAttacks(from, occupied) & targets & pinMask(from, kingSquare, pinned);
+            count = addMoves(from, piece, attacks, moves, count);
+        }
+        piece = makePiece(color, QUEEN);
+        for (long queens = pieceBB[piece]; queens != 0; queens &= queens - 1) {
+            int from = Long.numberOfTrailingZeros(queens);
+            long attacks = Bitboards.queenAttacks(from, occupied) & targets & pinMask(from, kingSquare, pinned);
+            count = addMoves(from, piece, attacks, moves, count);
+        }
+
+        return count;
+    }
+
+    private static long pinMask(int from, int kingSquare, long pinned) {
+        return (pinned & (1L << from)) != 0 ? Bitboards.LINE[kingSquare][from] : ~0L;
+    }
+
+    private int addKingMoves(int color, int kingSquare, long targetMask, int[] moves, int count) {
+        int king = makePiece(color, KING);
+        // Lift the king off the board so it cannot hide behind itself along a checking ray
+        long occ = occupied ^ (1L << kingSquare);
+        long targets = Bitboards.KING_ATTACKS[kingSquare] & ~colorBB[color] & targetMask;
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            if (attackersTo(to, color ^ 1, occ) == 0) {
+                moves[count++] = PackedMove.encode(kingSquare, to, king, squares[to], PackedMove.QUIET);
+            }
+        }
+        return count;
+    }
+
+    // With capturesOnly, pushes are limited to queen promotions and captures promote to a queen only
+    private int addPawnMoves(int color, int kingSquare, long checkers, long checkMask, long pinned,
+            boolean capturesOnly, int[] moves, int count) {
+        int pawn = makePiece(color, PAWN);
+        long enemies = colorBB[color ^ 1];
+        boolean canEnPassant = enPassantSquare >= 0 && color == (isWhiteToMove ? WHITE : BLACK);
+        int forward = color == WHITE ? -8 : 8;
+        int startRow = color == WHITE ? 6 : 1;
+        int lastRow = color == WHITE ? 0 : 7;
+
+        for (long pawns = pieceBB[pawn]; pawns != 0; pawns &= pawns - 1) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            long allowed = checkMask & pinMask(from, kingSquare, pinned);
+            int to = from + forward;
+
+            if (squares[to] == EMPTY) {
+                if ((allowed & (1L << to)) != 0) {
+                    if ((to >> 3) == lastRow) {
+                        count = addPromotions(from, to, pawn, EMPTY, capturesOnly, moves, count);
+                    } else if (!capturesOnly) {
+                        moves[count++] = PackedMove.encode(from, to, pawn, EMPTY, PackedMove.QUIET);
+                    }
+                }
+                int doubleTo = to + forward;
+                if (!capturesOnly && (from >> 3) == startRow && squares[doubleTo] == EMPTY
+                        && (allowed & (1L << doubleTo)) != 0) {
+                    moves[count++] = PackedMove.encode(from, doubleTo, pawn, EMPTY, PackedMove.DOUBLE_PUSH);
+                }
+            }
+
+            long attacks = Bitboards.PAWN_ATTACKS[color][from];
+            for (long captures = attacks & enemies & allowed; captures != 0; captures &= captures - 1) {
+                int target = Long.numberOfTrailingZeros(captures);
+                if ((target >> 3) == lastRow) {
+                    count = addPromotions(from, target, pawn, squares[target], capturesOnly, moves, count);
+                } else {
+                    moves[count++] = PackedMove.encode(from, target, pawn, squares[target], PackedMove.QUIET);
+                }
+            }
+            if (canEnPassant && (attacks & (1L << enPassantSquare)) != 0
+                    && isLegalEnPassant(color, kingSquare, checkers, from)) {
+                moves[count++] = PackedMove.encode(from, enPassantSquare, pawn, makePiece(color ^ 1, PAWN),
+                        PackedMove.EN_PASSANT);
+            }
+        }
+        return count;
+    }
+
+    // En passant removes two pieces from one line, so pins do not describe it; replay the occupancy instead
+    private boolean isLegalEnPassant(int color, int kingSquare, long checkers, int from) {
+        int enemy = (color ^ 1) * 6;
+        int victimSquare = color == WHITE ? enPassantSquare + 8 : enPassantSquare - 8;
+        long victim = 1L << victimSquare;
+
+        // A knight check cannot be answered by en passant
+        if ((checkers & ~victim & pieceBB[enemy + KNIGHT]) != 0) {
+            return false;
+        }
+
+        long occ = (occupied ^ (1L << from) ^ victim) | (1L << enPassantSquare);
+        long queens = pieceBB[enemy + QUEEN];
+        return (Bitboards.bishopAttacks(kingSquare, occ) & (pieceBB[enemy + BISHOP] | queens)) == 0
+                && (Bitboards.rookAttacks(kingSquare, occ) & (pieceBB[enemy + ROOK] | queens)) == 0;
+    }
+
+    private int addPromotions(int from, int to, int pawn, int captured, boolean queenOnly, int[] moves,
+            int count) {
+        int lowest = queenOnly ? PackedMove.PROMOTE_QUEEN : PackedMove.PROMOTE_KNIGHT;
+        for (int flags = PackedMove.PROMOTE_QUEEN; flags >= lowest; flags--) {
+            moves[count++] = PackedMove.encode(from, to, pawn, captured, flags);
+        }
+        return count;
+    }
+
+    // Called only when the king is not in check
+    private int addCastlingMoves(int color, int kingSquare, int[] moves, int count) {
+        int kingside = color == WHITE ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = color == WHITE ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+        int enemy = color ^ 1;
+        int king = makePiece(color, KING);
+
+        // The king must not pass through or land on an attacked square
+        if ((castlingRights & kingside) != 0 && squares[kingSquare + 1] == EMPTY
+                && squares[kingSquare + 2] == EMPTY && !isSquareAttacked(kingSquare + 1, enemy)
+                && !isSquareAttacked(kingSquare + 2, enemy)) {
+            moves[count++] = PackedMove.encode(kingSquare, kingSquare + 2, king, EMPTY, PackedMove.CASTLE);
+        }
+        if ((castlingRights & queenside) != 0 && squares[kingSquare - 1] == EMPTY
+                && squares[kingSquare - 2] == EMPTY && squares[kingSquare - 3] == EMPTY
+                && !isSquareAttacked(kingSquare - 1, enemy) && !isSquareAttacked(kingSquare - 2, enemy)) {
+            moves[count++] = PackedMove.encode(kingSquare, kingSquare - 2, king, EMPTY, PackedMove.CASTLE);
+        }
+        return count;
+    }
+
+    private int addMoves(int from, int piece, long targets, int[] moves, int count) {
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            moves[count++] = PackedMove.encode(from, to, piece, squares[to], PackedMove.QUIET);
+        }
+        return count;
+    }
+}
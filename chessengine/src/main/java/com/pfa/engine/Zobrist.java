@@ -0,0 +1,47 @@
+package com.pfa.engine;
+
+// Random keys for incremental Zobrist hashing of VirtualBoard positions
+public final class Zobrist {
+    public static final long[][] PIECE_SQUARE = new long[12][64];
+    public static final long[] CASTLING = new long[16];
+    public static final long[] EN_PASSANT_FILE = new long[8];
+    public static final long SIDE_TO_MOVE;
+    // PIECE_SQUARE for pawns and 0 for every other piece, so the pawn-only key updates without a branch
+    public static final long[][] PAWN_SQUARE = new long[12][64];
+
+    static {
+        // Fixed seed so keys are identical between runs
+        long seed = 0x5A0B12D3C4E5F607L;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                seed += 0x9E3779B97F4A7C15L;
+                PIECE_SQUARE[piece][sq] = mix(seed);
+            }
+        }
+        for (int i = 0; i < 16; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            CASTLING[i] = mix(seed);
+        }
+        for (int i = 0; i < 8; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            EN_PASSANT_FILE[i] = mix(seed);
+        }
+        seed += 0x9E3779B97F4A7C15L;
+        SIDE_TO_MOVE = mix(seed);
+
+        PAWN_SQUARE[VirtualBoard.makePiece(VirtualBoard.WHITE, VirtualBoard.PAWN)] =
+                PIECE_SQUARE[VirtualBoard.makePiece(VirtualBoard.WHITE, VirtualBoard.PAWN)];
+        PAWN_SQUARE[VirtualBoard.makePiece(VirtualBoard.BLACK, VirtualBoard.PAWN)] =
+                PIECE_SQUARE[VirtualBoard.makePiece(VirtualBoard.BLACK, VirtualBoard.PAWN)];
+    }
+
+    private Zobrist() {
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
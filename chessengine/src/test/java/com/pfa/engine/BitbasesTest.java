@@ -0,0 +1,75 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BitbasesTest {
+    // Scores the search must reach to agree with a win or loss; a draw must score 0
+    private static final int WIN_SCORE = 500;
+
+    @TempDir
+    static Path directory;
+
+    private static Bitbases bitbases;
+
+    @BeforeAll
+    static void generateThreeMenTables() throws IOException {
+        BitbaseGenerator generator = new BitbaseGenerator();
+        for (int code : BitbaseGenerator.materials(3)) {
+            generator.generate(code);
+        }
+        Path path = directory.resolve("bitbases.bin");
+        generator.write(path);
+        bitbases = Bitbases.open(path);
+        assertNotNull(bitbases);
+    }
+
+    @Test
+    void kpkProbesAgreeWithSearch() {
+        assertAgree("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1", Bitbases.WIN);
+        assertAgree("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1", Bitbases.LOSS);
+        assertAgree("4k3/4P3/4K3/8/8/8/8/8 b - - 0 1", Bitbases.DRAW);
+        assertAgree("8/8/8/8/8/2k5/2p5/2K5 w - - 0 1", Bitbases.DRAW);
+    }
+
+    @Test
+    void krkProbesAgreeWithSearch() {
+        assertAgree("8/8/8/4k3/8/8/8/R3K3 w - - 0 1", Bitbases.WIN);
+        assertAgree("8/8/8/4k3/8/8/8/R3K3 b - - 0 1", Bitbases.LOSS);
+        assertAgree("8/8/8/8/8/8/1k6/R3K3 b - - 0 1", Bitbases.DRAW);
+    }
+
+    @Test
+    void positionsOutsideTheTablesAreUnknown() {
+        int[] pieces = new int[Bitbases.MAX_MEN];
+        int[] squares = new int[Bitbases.MAX_MEN];
+        assertEquals(Bitbases.UNKNOWN, bitbases.probe(VirtualBoard.startPosition(), pieces, squares));
+        assertEquals(Bitbases.UNKNOWN,
+                bitbases.probe(VirtualBoard.fromFen("4k3/8/8/8/8/8/8/4K2R w K - 0 1"), pieces, squares));
+    }
+
+    private static void assertAgree(String fen, int expected) {
+        VirtualBoard position = VirtualBoard.fromFen(fen);
+        int result = bitbases.probe(position, new int[Bitbases.MAX_MEN], new int[Bitbases.MAX_MEN]);
+        assertEquals(expected, result, fen);
+
+        Engine engine = new Engine(1, true);
+        engine.findBestMove(position, SearchLimits.depth(12));
+        int score = engine.getLastScore();
+        if (result == Bitbases.WIN) {
+            assertTrue(score >= WIN_SCORE, fen + " scored " + score);
+        } else if (result == Bitbases.LOSS) {
+            assertTrue(score <= -WIN_SCORE, fen + " scored " + score);
+        } else {
+            assertEquals(0, score, fen);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class DrawTest {
+    @Test
+    void repetitionIsFoundSinceTheLastIrreversibleMove() {
+        VirtualBoard position = VirtualBoard.startPosition();
+        play(position, "g1f3", "g8f6", "f3g1");
+        assertFalse(position.isRepetition());
+        play(position, "f6g8");
+        assertTrue(position.isRepetition());
+        assertTrue(new VirtualBoard(position).isRepetition());
+
+        play(position, "e2e4", "g8f6", "f1e2", "f6g8");
+        assertFalse(position.isRepetition());
+    }
+
+    @Test
+    void nullMoveEndsTheRepetitionCheck() {
+        VirtualBoard position = VirtualBoard.startPosition();
+        play(position, "g1f3", "g8f6", "f3g1");
+        position.makeNullMove();
+        position.makeNullMove();
+        play(position, "f6g8");
+        assertFalse(position.isRepetition());
+    }
+
+    @Test
+    void searchTakesPerpetualCheckWhenLosing() {
+        // Black threatens mate and is a rook up; Qe8+ Kh7 Qh5+ Kg8 Qe8+ repeats
+        Engine engine = new Engine(1, true);
+        VirtualBoard position = VirtualBoard.fromFen("6k1/3Q2p1/5p2/8/8/1r6/2q2PPP/6K1 w - - 0 1");
+        int move = engine.findBestMove(position, SearchLimits.depth(7));
+        assertEquals("d7e8", PackedMove.toString(move));
+        assertEquals(0, engine.getLastScore());
+    }
+
+    @Test
+    void searchScoresTheFiftyMoveRuleAsDraw() {
+        Engine engine = new Engine(1, true);
+        engine.findBestMove(VirtualBoard.fromFen("4k3/8/8/8/8/8/8/R3K3 w - - 99 80"), SearchLimits.depth(5));
+        assertEquals(0, engine.getLastScore());
+
+        // Ra8# is the hundredth ply without a capture or pawn move, but mate ends the game first
+        int move = engine.findBestMove(VirtualBoard.fromFen("6k1/5ppp/8/8/8/8/8/R3K3 w - - 99 80"),
+                SearchLimits.depth(5));
+        assertEquals("a1a8", PackedMove.toString(move));
+        assertEquals(SearchWorker.MATE_SCORE - 1, engine.getLastScore());
+    }
+
+    private static void play(VirtualBoard position, String... moves) {
+        for (String move : moves) {
+            position.makeMove(PackedMove.parse(position, move));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class FenTest {
+    @Test
+    void referencePositionsRoundTrip() {
+        for (String fen : Perft.REFERENCE_FENS) {
+            assertEquals(fen, VirtualBoard.fromFen(fen).toFen());
+        }
+        String afterE4 = "rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2";
+        assertEquals(afterE4, VirtualBoard.fromFen(afterE4).toFen());
+    }
+
+    @Test
+    void countersAreOptional() {
+        assertEquals(VirtualBoard.START_FEN,
+                VirtualBoard.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq -").toFen());
+    }
+
+    @Test
+    void movesKeepTheCountersAndEnPassantSquare() {
+        VirtualBoard position = VirtualBoard.fromFen("4k3/8/8/8/3p4/8/4P3/4K3 w - - 7 30");
+        position.makeMove(PackedMove.parse(position, "e2e4"));
+        assertEquals("4k3/8/8/8/3pP3/8/8/4K3 b - e3 0 30", position.toFen());
+        position.makeMove(PackedMove.parse(position, "e8d8"));
+        assertEquals("3k4/8/8/8/3pP3/8/8/4K3 w - - 1 31", position.toFen());
+    }
+
+    @Test
+    void castlingRightsWithoutKingOrRookAtHomeAreDropped() {
+        assertEquals("4k2r/8/8/8/8/8/8/1R2K3 w k - 0 1",
+                VirtualBoard.fromFen("4k2r/8/8/8/8/8/8/1R2K3 w KQkq - 0 1").toFen());
+        assertEquals("r6r/4k3/8/8/8/8/8/R3K2R b KQ - 0 1",
+                VirtualBoard.fromFen("r6r/4k3/8/8/8/8/8/R3K2R b KQkq - 0 1").toFen());
+    }
+
+    @Test
+    void malformedFenIsRejected() {
+        String[] bad = {
+                "",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 extra",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnr/ppppppppp/7/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNX w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQ1BNR w kq - 0 1",
+                "rnbqkbnP/ppppppp1/8/8/8/8/PPPPPPP1/RNBQKBNR w Qkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQxq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KK - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq z9 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e3 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - x 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - -1 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 0",
+                "4k3/8/8/8/8/8/8/K3K3 w - - 0 1",
+                "4k3/8/8/8/8/8/8/4R1K1 w - - 0 1"
+        };
+        for (String fen : bad) {
+            assertThrows(IllegalArgumentException.class, () -> VirtualBoard.fromFen(fen), fen);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class PerftTest {
+    // Deeper counts are left to the Perft main method; these keep mvn test fast
+    private static final long MAX_TEST_NODES = 100_000;
+
+    @Test
+    void referencePositionsMatchPublishedCounts() {
+        for (int i = 0; i < Perft.REFERENCE_FENS.length; i++) {
+            String fen = Perft.REFERENCE_FENS[i];
+            long[] counts = Perft.REFERENCE_COUNTS[i];
+            for (int depth = 1; depth <= counts.length && counts[depth - 1] <= MAX_TEST_NODES; depth++) {
+                long nodes = new Perft(VirtualBoard.fromFen(fen)).count(depth);
+                assertEquals(counts[depth - 1], nodes, fen + " at depth " + depth);
+            }
+        }
+    }
+
+    @Test
+    void positionIsRestoredAfterCounting() {
+        VirtualBoard position = VirtualBoard.fromFen(Perft.REFERENCE_FENS[1]);
+        long key = position.getZobristKey();
+        new Perft(position).count(3);
+        assertEquals(key, position.getZobristKey());
+        assertEquals(Perft.REFERENCE_FENS[1], position.toFen());
+    }
+}
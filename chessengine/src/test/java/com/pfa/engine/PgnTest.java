@@ -0,0 +1,156 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PgnTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void sanOfEveryMoveParsesBack() {
+        int[] moves = new int[VirtualBoard.MAX_MOVES];
+        int[] replies = new int[VirtualBoard.MAX_MOVES];
+        for (String fen : Perft.REFERENCE_FENS) {
+            VirtualBoard position = VirtualBoard.fromFen(fen);
+            int count = position.generateLegalMoves(moves, 0);
+            for (int i = 0; i < count; i++) {
+                assertEquals(moves[i], San.parse(position, San.toSan(position, moves[i])), fen);
+                position.makeMove(moves[i]);
+                int replyCount = position.generateLegalMoves(replies, 0);
+                for (int j = 0; j < replyCount; j++) {
+                    assertEquals(replies[j], San.parse(position, San.toSan(position, replies[j])), fen);
+                }
+                position.undoMove();
+            }
+        }
+    }
+
+    @Test
+    void sanOfSpecialMoves() {
+        assertSan("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1", "e1g1", "O-O");
+        assertSan("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1", "e1c1", "O-O-O");
+        assertSan("4k3/1P6/8/8/8/8/8/4K3 w - - 0 1", "b7b8q", "b8=Q+");
+        assertSan("4k3/8/8/8/8/8/6K1/R6R w - - 0 1", "a1d1", "Rad1");
+        assertSan("6k1/5ppp/8/8/8/8/8/R3K3 w - - 0 1", "a1a8", "Ra8#");
+        assertSan("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5d6", "exd6");
+        assertSan("4k3/8/8/8/8/8/8/2N1K1N1 w - - 0 1", "g1e2", "Nge2");
+    }
+
+    @Test
+    void sanIsParsedFromAByteRange() {
+        VirtualBoard position = VirtualBoard.startPosition();
+        byte[] line = "1. Nf3+! e5 0-0 *".getBytes(StandardCharsets.US_ASCII);
+        int[] moves = new int[VirtualBoard.MAX_MOVES];
+        assertEquals(PackedMove.parse(position, "g1f3"), San.parse(position, line, 3, 8, moves));
+        assertEquals(PackedMove.NONE, San.parse(position, line, 9, 11, moves));
+        assertEquals(PackedMove.NONE, San.parse(position, line, 12, 15, moves));
+    }
+
+    @Test
+    void writtenGamesReadBackUnchanged() throws IOException {
+        Random random = new Random(1);
+        List<PgnGame> games = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String fen = i % 4 == 3 ? Perft.REFERENCE_FENS[1 + i % 5] : null;
+            games.add(randomGame(random, i, fen));
+        }
+
+        Path file = directory.resolve("games.pgn");
+        try (PgnWriter writer = PgnWriter.append(file)) {
+            for (PgnGame game : games) {
+                writer.write(game);
+            }
+        }
+
+        List<PgnGame> read = new ArrayList<>();
+        try (PgnReader reader = PgnReader.open(file)) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                assertFalse(game.hasError(), game.getError());
+                read.add(game);
+            }
+        }
+        assertEquals(games, read);
+
+        List<PgnGame> parallel = Collections.synchronizedList(new ArrayList<>());
+        assertEquals(games.size(), PgnReader.readParallel(file, 2, parallel::add));
+        assertEquals(games.size(), parallel.size());
+        assertEquals(games, sortedByRound(parallel));
+    }
+
+    @Test
+    void illegalMoveIsReported() throws IOException {
+        Path file = directory.resolve("illegal.pgn");
+        Files.writeString(file, "[Event \"?\"]\n\n1. e4 e5 2. Ke3 *\n\n");
+        try (PgnReader reader = PgnReader.open(file)) {
+            PgnGame game = reader.next();
+            assertTrue(game.hasError());
+            assertEquals(2, game.getMoveCount());
+            assertNull(reader.next());
+        }
+    }
+
+    // Random legal moves until the game ends or 200 plies are played
+    private static PgnGame randomGame(Random random, int round, String fen) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "Round trip");
+        tags.put("Site", "?");
+        tags.put("Date", "2024.01.01");
+        tags.put("Round", String.valueOf(round));
+        tags.put("White", "White \"quoted\"");
+        tags.put("Black", "Black\\Engine");
+        VirtualBoard position = fen != null ? VirtualBoard.fromFen(fen) : VirtualBoard.startPosition();
+
+        int[] legal = new int[VirtualBoard.MAX_MOVES];
+        int[] played = new int[200];
+        int plies = 0;
+        while (plies < played.length) {
+            int count = position.generateLegalMoves(legal, 0);
+            if (count == 0) {
+                break;
+            }
+            played[plies] = legal[random.nextInt(count)];
+            position.makeMove(played[plies++]);
+        }
+        String result = position.isCheckmate() ? (position.isWhiteToMove() ? PgnGame.BLACK_WINS
+                : PgnGame.WHITE_WINS) : plies < played.length ? PgnGame.DRAW : PgnGame.UNFINISHED;
+        tags.put("Result", result);
+        if (fen != null) {
+            tags.put("SetUp", "1");
+            tags.put("FEN", fen);
+        }
+        return new PgnGame(tags, Arrays.copyOf(played, plies), result);
+    }
+
+    private static List<PgnGame> sortedByRound(List<PgnGame> games) {
+        List<PgnGame> sorted = new ArrayList<>(games);
+        sorted.sort((a, b) -> Integer.compare(Integer.parseInt(a.getTag("Round")),
+                Integer.parseInt(b.getTag("Round"))));
+        return sorted;
+    }
+
+    private static void assertSan(String fen, String move, String san) {
+        VirtualBoard position = VirtualBoard.fromFen(fen);
+        int packed = PackedMove.parse(position, move);
+        assertEquals(san, San.toSan(position, packed));
+        assertEquals(packed, San.parse(position, san));
+    }
+}
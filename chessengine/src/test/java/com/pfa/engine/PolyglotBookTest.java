@@ -0,0 +1,40 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class PolyglotBookTest {
+    // Test positions and keys published with the Polyglot book format
+    @Test
+    void keysMatchPublishedValues() {
+        assertKey(0x463b96181691fc9cL);
+        assertKey(0x823c9b50fd114196L, "e2e4");
+        assertKey(0x0756b94461c50fb0L, "e2e4", "d7d5");
+        assertKey(0x662fafb965db29d4L, "e2e4", "d7d5", "e4e5");
+        assertKey(0x22a48b5a8e47ff78L, "e2e4", "d7d5", "e4e5", "f7f5");
+        assertKey(0x652a607ca3f242c1L, "e2e4", "d7d5", "e4e5", "f7f5", "e1e2");
+        assertKey(0x00fdd303c946bdd9L, "e2e4", "d7d5", "e4e5", "f7f5", "e1e2", "e8f7");
+        assertKey(0x3c8123ea7b067637L, "a2a4", "b7b5", "h2h4", "b5b4", "c2c4");
+        assertKey(0x5c3f9b829b279560L, "a2a4", "b7b5", "h2h4", "b5b4", "c2c4", "b4c3", "a1a3");
+    }
+
+    private static void assertKey(long expected, String... moves) {
+        VirtualBoard position = VirtualBoard.startPosition();
+        for (String move : moves) {
+            position.makeMove(findMove(position, move));
+        }
+        assertEquals(expected, PolyglotBook.key(position), String.join(" ", moves));
+    }
+
+    private static int findMove(VirtualBoard position, String text) {
+        int[] moves = new int[VirtualBoard.MAX_MOVES];
+        int count = position.generateLegalMoves(moves, 0);
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.toString(moves[i]).equals(text)) {
+                return moves[i];
+            }
+        }
+        throw new IllegalArgumentException("Illegal move " + text);
+    }
+}
@@ -0,0 +1,65 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class SeeTest {
+    private static final int P = Evaluator.PAWN_VALUE;
+    private static final int N = Evaluator.KNIGHT_VALUE;
+    private static final int R = Evaluator.ROOK_VALUE;
+    private static final int Q = Evaluator.QUEEN_VALUE;
+
+    @Test
+    void undefendedPawnIsWon() {
+        assertSee("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1", "e1e5", P);
+    }
+
+    @Test
+    void knightTakingDefendedPawnLosesTheKnight() {
+        assertSee("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1", "d3e5", P - N);
+    }
+
+    @Test
+    void pawnTakingDefendedKnightWinsTheDifference() {
+        assertSee("4k3/8/2p5/3n4/4P3/8/8/4K3 w - - 0 1", "e4d5", N - P);
+    }
+
+    @Test
+    void queenTakingDefendedPawnLosesTheQueen() {
+        assertSee("4k3/8/2p5/3p4/8/8/8/3QK3 w - - 0 1", "d1d5", P - Q);
+    }
+
+    @Test
+    void rookBehindRookJoinsTheExchange() {
+        assertSee("4r1k1/8/8/4p3/8/8/4R3/4R1K1 w - - 0 1", "e2e5", P);
+        assertSee("4r1k1/4r3/8/4p3/8/8/4R3/4R1K1 w - - 0 1", "e2e5", P - R);
+    }
+
+    @Test
+    void quietMoveToAnAttackedSquareLosesThePiece() {
+        assertSee("4k3/8/2p5/8/8/8/8/3RK3 w - - 0 1", "d1d5", -R);
+        assertSee("4k3/8/8/8/8/8/8/3RK3 w - - 0 1", "d1d5", 0);
+    }
+
+    @Test
+    void enPassantCaptureWinsThePawn() {
+        assertSee("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5d6", P);
+    }
+
+    private static void assertSee(String fen, String move, int expected) {
+        VirtualBoard position = VirtualBoard.fromFen(fen);
+        assertEquals(expected, position.see(findMove(position, move)), fen + " " + move);
+    }
+
+    private static int findMove(VirtualBoard position, String text) {
+        int[] moves = new int[VirtualBoard.MAX_MOVES];
+        int count = position.generateLegalMoves(moves, 0);
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.toString(moves[i]).equals(text)) {
+                return moves[i];
+            }
+        }
+        throw new IllegalArgumentException("Illegal move " + text);
+    }
+}
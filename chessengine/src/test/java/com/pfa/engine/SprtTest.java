@@ -0,0 +1,47 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class SprtTest {
+    private static final double EPSILON = 1e-6;
+
+    private final Sprt sprt = new Sprt(0, 10, 0.05, 0.05);
+
+    @Test
+    void boundsFollowFromTheErrorRates() {
+        assertEquals(Math.log(0.05 / 0.95), sprt.getLowerBound(), EPSILON);
+        assertEquals(Math.log(0.95 / 0.05), sprt.getUpperBound(), EPSILON);
+    }
+
+    @Test
+    void llrOfKnownResults() {
+        assertEquals(2.564115171, sprt.llr(1000, 1000, 900), EPSILON);
+        assertEquals(-6.235609835, sprt.llr(900, 1000, 1000), EPSILON);
+        assertEquals(11.000554840, sprt.llr(1200, 1000, 900), EPSILON);
+        assertEquals(1.673186974, new Sprt(0, 5, 0.05, 0.05).llr(5000, 10000, 4800), EPSILON);
+    }
+
+    @Test
+    void llrIsZeroUntilEveryOutcomeOccurred() {
+        assertEquals(0, sprt.llr(10, 0, 0), 0);
+        assertEquals(0, sprt.llr(10, 5, 0), 0);
+    }
+
+    @Test
+    void statusComparesTheLlrWithTheBounds() {
+        assertEquals(Sprt.CONTINUE, sprt.status(1000, 1000, 900));
+        assertEquals(Sprt.ACCEPT_H0, sprt.status(900, 1000, 1000));
+        assertEquals(Sprt.ACCEPT_H1, sprt.status(1200, 1000, 900));
+        assertEquals(Sprt.CONTINUE, sprt.status(0, 0, 0));
+    }
+
+    @Test
+    void eloOfAnEvenScoreIsZero() {
+        double[] elo = Sprt.eloWithMargin(100, 100, 100);
+        assertEquals(0, elo[0], EPSILON);
+        assertEquals(0.5, Sprt.expectedScore(0), EPSILON);
+        assertEquals(100, Sprt.elo(Sprt.expectedScore(100)), EPSILON);
+    }
+}
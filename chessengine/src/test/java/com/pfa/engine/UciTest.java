@@ -0,0 +1,62 @@
+package com.pfa.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class UciTest {
+    @Test
+    void longGameIsSearched() throws IOException {
+        // 1600 plies of knight moves, more than the undo history starts with
+        StringBuilder moves = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            moves.append(" g1f3 g8f6 f3g1 f6g8");
+        }
+        String output = run("position startpos moves" + moves + "\ngo depth 4\n");
+        assertTrue(output.contains("bestmove "), output);
+        assertFalse(output.contains("illegal move"), output);
+    }
+
+    @Test
+    void malformedPositionIsReported() throws IOException {
+        String output = run("position fen 8/8/8/8/8/8/8/8 w - z9 0 1\nposition startpos moves e2e4\ngo depth 1\n");
+        assertTrue(output.contains("info string invalid position"), output);
+        assertTrue(output.contains("bestmove "), output);
+    }
+
+    @Test
+    void newGameForgetsEarlierSearches() throws IOException {
+        String search = "position startpos\ngo depth 6\n";
+        String fresh = run(search);
+        String afterNewGame = run("position fen " + Perft.REFERENCE_FENS[1] + "\ngo depth 6\nucinewgame\n" + search);
+        assertEquals(lastNodeCount(fresh), lastNodeCount(afterNewGame));
+    }
+
+    // Nodes of the last info line; with one thread and a depth limit, the same for the same tables
+    private static String lastNodeCount(String output) {
+        Matcher matcher = Pattern.compile(" nodes (\\d+)").matcher(output);
+        String nodes = null;
+        while (matcher.find()) {
+            nodes = matcher.group(1);
+        }
+        return nodes;
+    }
+
+    private static String run(String commands) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8.name());
+        new Uci(out).run(new BufferedReader(new StringReader(commands)));
+        return bytes.toString(StandardCharsets.UTF_8.name());
+    }
+}